@@ -0,0 +1,270 @@
+package com.example.android.guardiannews;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link FakeGuardianServer} stands in for both the Guardian API and the server thumbnails
+ * are downloaded from, on a local port, so the whole fetch pipeline can be measured without
+ * touching the network. Requests for "/search" get a canned search response, and anything
+ * else gets a canned thumbnail.
+ *
+ * The canned search response is rewritten for each query and page, so that every query finds
+ * its own news items, with their own thumbnails, as different topics do on the real API.
+ * Otherwise merging several queries would leave out all but one query's results as duplicates,
+ * and every query's thumbnails would come from the cache after the first.
+ *
+ * Each response can be delayed and can fail at random, to simulate a slow or flaky network.
+ * Connections are kept alive between requests, as a real server would.
+ */
+public class FakeGuardianServer {
+
+    private static final String LOG_TAG = FakeGuardianServer.class.getName();
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The start of the web URL of every news item in the canned search responses. */
+    private static final String WEB_URL_PREFIX = "\"webUrl\":\"https://www.theguardian.com/";
+
+    /** The start of the URL of every thumbnail in the canned search responses. */
+    private static final String THUMBNAIL_URL_PREFIX =
+            "\"thumbnail\":\"https://media.guim.co.uk/";
+
+    /** The canned search responses, by number of results. */
+    private final TreeMap<Integer, byte[]> searchResponses;
+
+    /** The canned thumbnail. */
+    private final byte[] thumbnail;
+
+    /** The search responses rewritten so far, by query, page and page size. */
+    private final Map<String, byte[]> queryResponses = new ConcurrentHashMap<>();
+
+    /** Each client connection is handled on its own thread. */
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Random random = new Random();
+
+    private ServerSocket serverSocket;
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double failureRate;
+
+    /**
+     * Constructs a new {@link FakeGuardianServer}, which isn't listening until it's started.
+     * @param searchResponses canned search responses, by their number of results. The one
+     *                        with the fewest results at least the requested page size is served.
+     * @param thumbnail the image served for any other request
+     */
+    public FakeGuardianServer(Map<Integer, byte[]> searchResponses, byte[] thumbnail) {
+        this.searchResponses = new TreeMap<>(searchResponses);
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * Sets how long each response is delayed by, in ms. Each delay is picked at random from
+     * latencyMillis - jitterMillis to latencyMillis + jitterMillis.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Sets the fraction of requests, from 0 to 1, which get a 503 response instead of the
+     * canned one.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Starts listening on a free port on the loopback interface.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+    }
+
+    /**
+     * Stops listening, and closes every connection.
+     */
+    public void shutdown() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the base URL of the server, e.g. "http://127.0.0.1:43210".
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // The server socket has been closed
+                return;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem accepting connection", e);
+            }
+        }
+    }
+
+    /**
+     * Serves requests on a connection until the client closes it.
+     */
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+
+            String requestLine;
+            while ((requestLine = readRequest(input)) != null) {
+                delay();
+
+                if (random.nextDouble() < failureRate) {
+                    writeResponse(output, 503, "text/plain",
+                            "Service Unavailable".getBytes(ASCII));
+                    continue;
+                }
+
+                // The request line is e.g. "GET /search?q=... HTTP/1.1"
+                Uri uri = Uri.parse(requestLine.split(" ")[1]);
+                if ("/search".equals(uri.getPath())) {
+                    writeResponse(output, 200, "application/json",
+                            getSearchResponse(uri.getQueryParameter("q"),
+                                    uri.getQueryParameter("page"),
+                                    uri.getQueryParameter("page-size")));
+                } else {
+                    writeResponse(output, 200, "image/jpeg", thumbnail);
+                }
+            }
+        } catch (IOException e) {
+            // The client went away, or the server was shut down
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing connection", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a request's request line and headers, returning the request line, or null if the
+     * client has closed the connection. GET requests have no body, so that's all there is.
+     */
+    private static String readRequest(InputStream input) throws IOException {
+        String requestLine = readLine(input);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return null;
+        }
+
+        String header;
+        do {
+            header = readLine(input);
+        } while (header != null && !header.isEmpty());
+        return requestLine;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') {
+                return new String(line.toByteArray(), ASCII).trim();
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : new String(line.toByteArray(), ASCII).trim();
+    }
+
+    private static void writeResponse(OutputStream output, int code, String contentType,
+                                      byte[] body) throws IOException {
+        // Don't let the app's HTTP response cache answer later requests, or every request after
+        // the first would be measuring the cache rather than the pipeline
+        String head = "HTTP/1.1 " + code + (code == 200 ? " OK" : " Error") + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Cache-Control: no-store\r\n"
+                + "\r\n";
+        output.write(head.getBytes(ASCII));
+        output.write(body);
+        output.flush();
+    }
+
+    /**
+     * Returns the search response for the given page of the given query, which is the canned
+     * response with the fewest results which still fills a page of the given size, or the
+     * biggest one if none does, rewritten so that its URLs are unique to the query and page.
+     */
+    private byte[] getSearchResponse(String query, String page, String pageSize) {
+        String key = query + "|" + page + "|" + pageSize;
+        byte[] response = queryResponses.get(key);
+        if (response == null) {
+            int size = pageSize == null ? 10 : Integer.parseInt(pageSize);
+            Map.Entry<Integer, byte[]> entry = searchResponses.ceilingEntry(size);
+            byte[] canned = entry != null
+                    ? entry.getValue() : searchResponses.lastEntry().getValue();
+
+            // e.g. "john-mayer-1/" for the first page of "john mayer"
+            String slug = (query == null ? "" : query).toLowerCase(Locale.US)
+                    .replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "")
+                    + "-" + (page == null ? "1" : page) + "/";
+            response = new String(canned, UTF8)
+                    .replace(WEB_URL_PREFIX, WEB_URL_PREFIX + slug)
+                    .replace(THUMBNAIL_URL_PREFIX, THUMBNAIL_URL_PREFIX + slug)
+                    .getBytes(UTF8);
+            queryResponses.put(key, response);
+        }
+        return response;
+    }
+
+    private void delay() {
+        long jitter = latencyJitterMillis == 0
+                ? 0 : (long) ((random.nextDouble() * 2 - 1) * latencyJitterMillis);
+        long delay = Math.max(latencyMillis + jitter, 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.guardiannews;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the whole fetch pipeline against a {@link FakeGuardianServer} under controlled
+ * network conditions, and measures the end-to-end latency of loading the news feed: fetching
+ * and merging a page of several queries, then downloading and decoding every thumbnail on it,
+ * as the feed does when it's first shown.
+ *
+ * Each scenario logs a histogram of the end-to-end latency, along with a dump of the
+ * {@link Metrics} recorded during it, with the tag "FeedLoadTest".
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedLoadTest {
+
+    private static final String LOG_TAG = "FeedLoadTest";
+
+    /** The number of times the feed is loaded in each scenario. */
+    private static final int LOADS_PER_SCENARIO = 20;
+
+    /** The topics the feed is made of, as in a user's saved queries. */
+    private static final String[] TOPICS = {"john mayer", "glastonbury", "brexit"};
+
+    /** How long to wait for the thumbnails of a page before giving up on them, in ms. */
+    private static final long THUMBNAIL_TIMEOUT_MILLIS = 30 * 1000;
+
+    private FakeGuardianServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new FakeGuardianServer(TestAssets.loadSearchResponses(),
+                TestAssets.loadThumbnail());
+        server.start();
+        // A scenario with failures can leave the circuit open, which would refuse every
+        // request in the next scenario
+        QueryUtils.resetCircuitBreaker();
+        QueryUtils.setHttpTransport(
+                new RedirectingTransport(server.getBaseUrl(), new UrlConnectionTransport()));
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        QueryUtils.setHttpTransport(new UrlConnectionTransport());
+        server.shutdown();
+    }
+
+    @Test
+    public void fastNetwork() throws Exception {
+        server.setLatency(20, 10);
+        runScenario("fast");
+    }
+
+    @Test
+    public void slowNetwork() throws Exception {
+        server.setLatency(400, 200);
+        runScenario("slow");
+    }
+
+    @Test
+    public void flakyNetwork() throws Exception {
+        server.setLatency(100, 50);
+        server.setFailureRate(0.2);
+        runScenario("flaky");
+    }
+
+    /**
+     * Loads the feed {@link #LOADS_PER_SCENARIO} times with the server's current settings, and
+     * logs how long each load took.
+     */
+    private void runScenario(String name) throws Exception {
+        List<GuardianQuery> queries = new ArrayList<>();
+        for (String topic : TOPICS) {
+            queries.add(new GuardianQuery.Builder().terms(topic).build());
+        }
+
+        Metrics.reset();
+        Metrics.Histogram latencies = new Metrics.Histogram();
+        int failedLoads = 0;
+
+        for (int i = 0; i < LOADS_PER_SCENARIO; i++) {
+            long start = SystemClock.elapsedRealtime();
+
+            NewsPage newsPage = QueryUtils.fetchMergedNewsPage(queries, 1,
+                    QueryUtils.DEFAULT_PAGE_SIZE, null,
+                    start + NewsItemLoader.LOAD_BUDGET_MILLIS);
+            if (!newsPage.isSuccessful()) {
+                failedLoads++;
+            }
+            loadThumbnails(newsPage.getNewsItems(), i);
+
+            latencies.record(SystemClock.elapsedRealtime() - start);
+        }
+
+        Log.i(LOG_TAG, name + ": feed load ms " + latencies + ", failed loads " + failedLoads);
+        for (String line : Metrics.dump().split("\n")) {
+            Log.i(LOG_TAG, name + ": " + line);
+        }
+
+        assertTrue("No loads finished", latencies.getCount() == LOADS_PER_SCENARIO);
+    }
+
+    /**
+     * Downloads and decodes the thumbnail of each news item through a {@link ThumbnailFetcher}
+     * with an empty cache, and waits for them all to be delivered or fail.
+     */
+    private void loadThumbnails(List<NewsItem> newsItems, int run) throws Exception {
+        File cacheDir = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "load_test_" + run);
+        ImageCache imageCache = new ImageCache(4 * 1024 * 1024, cacheDir, 4 * 1024 * 1024);
+        final ThumbnailFetcher thumbnailFetcher = new ThumbnailFetcher(imageCache,
+                ThumbnailFetcher.DEFAULT_CONCURRENCY, ThumbnailFetcher.DEFAULT_TIMEOUT_MILLIS,
+                380, 228, ThumbnailFetcher.DEFAULT_BITMAP_CONFIG);
+
+        final List<String> thumbnailUrls = new ArrayList<>();
+        for (NewsItem newsItem : newsItems) {
+            if (newsItem.getThumbnailUrl() != null) {
+                thumbnailUrls.add(newsItem.getThumbnailUrl());
+            }
+        }
+
+        // A thumbnail that fails to load is never delivered, so count successes and give up
+        // waiting for the rest once every download has had time to finish
+        final CountDownLatch delivered = new CountDownLatch(thumbnailUrls.size());
+        final AtomicInteger deliveredCount = new AtomicInteger();
+
+        // The fetcher must be used from the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : thumbnailUrls) {
+                    thumbnailFetcher.fetchThumbnail(url,
+                            new ThumbnailFetcher.OnThumbnailLoadedListener() {
+                                @Override
+                                public void onThumbnailLoaded(String url, Bitmap thumbnail) {
+                                    deliveredCount.incrementAndGet();
+                                    delivered.countDown();
+                                }
+                            });
+                }
+            }
+        });
+
+        delivered.await(THUMBNAIL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (deliveredCount.get() < thumbnailUrls.size()) {
+            Log.w(LOG_TAG, (thumbnailUrls.size() - deliveredCount.get())
+                    + " thumbnails weren't loaded");
+        }
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                thumbnailFetcher.shutdown();
+            }
+        });
+        deleteRecursively(cacheDir);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
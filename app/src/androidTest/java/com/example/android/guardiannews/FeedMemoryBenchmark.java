@@ -0,0 +1,146 @@
+package com.example.android.guardiannews;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how much heap a long history of the feed holds on to as {@link NewsItem}s, before
+ * and after they've been prepared for display, against the same history held the way news
+ * items used to be: nine Strings each, every one its own copy, with the text shown for them
+ * formatted up front. The history is the 200 result fixture repeated with different URLs and
+ * titles, so the sections and contributors repeat the way they do in a real feed.
+ *
+ * The heap is shared with whatever else the process is doing, so the saving is only checked
+ * with plenty of room to spare. Run with "./gradlew connectedAndroidTest" and collect the
+ * results with "adb logcat -s MicroBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedMemoryBenchmark {
+
+    private static final String LOG_TAG = "MicroBenchmark";
+
+    /** The number of news items in the history. */
+    private static final int HISTORY_SIZE = 5000;
+
+    /** The parsed 200 result fixture, which the history is built from. */
+    private static List<NewsItem> fixture;
+
+    @BeforeClass
+    public static void loadFixture() throws Exception {
+        byte[] response = TestAssets.loadSearchResponses().get(200);
+        fixture = NewsItemJsonParser.parse(new ByteArrayInputStream(response), null)
+                .getNewsItems();
+    }
+
+    @Test
+    public void retainedHeap() {
+        long before = usedHeap();
+        List<UncompactNewsItem> uncompact = buildUncompactHistory();
+        long uncompactBytes = usedHeap() - before;
+        assertEquals(HISTORY_SIZE, uncompact.size());
+        uncompact = null;
+
+        before = usedHeap();
+        List<NewsItem> history = buildHistory();
+        long historyBytes = usedHeap() - before;
+        assertEquals(HISTORY_SIZE, history.size());
+
+        before = usedHeap();
+        NewsItem.prepareForDisplay(history);
+        long displayBytes = usedHeap() - before;
+
+        Log.i(LOG_TAG, "retainedHeap/" + HISTORY_SIZE + " uncompact=" + uncompactBytes
+                + "B history=" + historyBytes + "B (" + historyBytes / HISTORY_SIZE
+                + "B each) preparedForDisplay=+" + displayBytes + "B pooledStrings="
+                + StringPool.size());
+
+        // The titles and URLs are the same either way and make up most of each news item, so
+        // what's shared and not formatted has to save at least a quarter of the whole
+        assertTrue("history=" + historyBytes + "B uncompact=" + uncompactBytes + "B",
+                historyBytes * 4 < uncompactBytes * 3);
+        assertTrue("prepared=" + (historyBytes + displayBytes) + "B uncompact="
+                + uncompactBytes + "B", historyBytes + displayBytes < uncompactBytes);
+    }
+
+    /**
+     * Returns a history of {@link #HISTORY_SIZE} distinct news items, built from the fixture.
+     */
+    private static List<NewsItem> buildHistory() {
+        List<NewsItem> history = new ArrayList<>();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            NewsItem template = fixture.get(i % fixture.size());
+            history.add(new NewsItem(template.getUrl() + "?" + i, template.getWebTitle() + i,
+                    template.getThumbnailUrl(), template.getSectionName(),
+                    template.getTime(), template.getContributor()));
+        }
+        return history;
+    }
+
+    /**
+     * Returns the same history as {@link #buildHistory()}, held the way news items used to be.
+     */
+    private static List<UncompactNewsItem> buildUncompactHistory() {
+        List<UncompactNewsItem> history = new ArrayList<>();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            NewsItem template = fixture.get(i % fixture.size());
+            history.add(new UncompactNewsItem(template.getUrl() + "?" + i,
+                    template.getWebTitle() + i, template.getThumbnailUrl(),
+                    template.getSectionName(), template.getTime(), template.getContributor()));
+        }
+        return history;
+    }
+
+    /**
+     * Returns the number of bytes in use on the heap, after collecting what can be collected.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * A news item held the way they used to be, as a baseline: every String is its own copy,
+     * as it is when each news item is parsed from its own JSON, and the date is kept as a
+     * String alongside the text shown for it.
+     */
+    @SuppressWarnings("unused")
+    private static class UncompactNewsItem {
+        private final String url;
+        private final String webTitle;
+        private final String thumbnailUrl;
+        private final String sectionName;
+        private final String time;
+        private final String contributor;
+        private final String formattedTime;
+        private final String displaySectionName;
+        private final String displayContributor;
+
+        UncompactNewsItem(String url, String webTitle, String thumbnailUrl, String sectionName,
+                          String time, String contributor) {
+            this.url = url;
+            this.webTitle = webTitle;
+            this.thumbnailUrl = thumbnailUrl;
+            this.sectionName = new String(sectionName);
+            this.time = new String(time);
+            this.contributor = contributor == null ? null : new String(contributor);
+            this.formattedTime = NewsItemFormatter.formatDate(time);
+            this.displaySectionName = NewsItemFormatter.formatSection(sectionName);
+            this.displayContributor = NewsItemFormatter.formatContributor(contributor);
+        }
+    }
+}
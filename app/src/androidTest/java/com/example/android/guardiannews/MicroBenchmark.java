@@ -0,0 +1,116 @@
+package com.example.android.guardiannews;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * A small microbenchmark harness for running on a device. An operation is run a number of
+ * times to warm up the JIT, and then timed over a number of measured runs. The median time per
+ * run is reported, since it's less affected than the mean by GC pauses and other noise, along
+ * with the number of objects and bytes the operation allocates per run.
+ *
+ * Results are logged with the tag "MicroBenchmark", so a whole run can be collected with
+ * "adb logcat -s MicroBenchmark".
+ */
+public class MicroBenchmark {
+
+    private static final String LOG_TAG = "MicroBenchmark";
+
+    /** The number of runs used to warm up before measuring, by default. */
+    public static final int DEFAULT_WARMUP_RUNS = 20;
+
+    /** The number of measured runs, by default. */
+    public static final int DEFAULT_MEASURED_RUNS = 50;
+
+    /**
+     * An operation to benchmark.
+     */
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * The outcome of benchmarking an operation.
+     */
+    public static class Result {
+        public final String name;
+        public final long medianNanos;
+        public final long minNanos;
+        public final long allocationsPerRun;
+        public final long allocatedBytesPerRun;
+
+        Result(String name, long medianNanos, long minNanos, long allocationsPerRun,
+               long allocatedBytesPerRun) {
+            this.name = name;
+            this.medianNanos = medianNanos;
+            this.minNanos = minNanos;
+            this.allocationsPerRun = allocationsPerRun;
+            this.allocatedBytesPerRun = allocatedBytesPerRun;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s median=%,10dns min=%,10dns allocs=%,8d bytes=%,10d",
+                    name, medianNanos, minNanos, allocationsPerRun, allocatedBytesPerRun);
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link MicroBenchmark}
+     * object. This class is only meant to hold static methods.
+     */
+    private MicroBenchmark() {
+    }
+
+    /**
+     * Benchmarks an operation with the default number of warm up and measured runs.
+     */
+    public static Result run(String name, Operation operation) throws Exception {
+        return run(name, operation, DEFAULT_WARMUP_RUNS, DEFAULT_MEASURED_RUNS);
+    }
+
+    /**
+     * Benchmarks an operation, and logs the result.
+     * @param name what to call the operation in the results
+     * @param operation the operation to run
+     * @param warmupRuns the number of times to run it before measuring
+     * @param measuredRuns the number of times to run it while measuring
+     * @return the result
+     */
+    @SuppressWarnings("deprecation")
+    public static Result run(String name, Operation operation, int warmupRuns, int measuredRuns)
+            throws Exception {
+        for (int i = 0; i < warmupRuns; i++) {
+            operation.run();
+        }
+
+        // Time each run on its own, so the median can be taken
+        long[] times = new long[measuredRuns];
+        for (int i = 0; i < measuredRuns; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        // Count allocations separately, since counting them slows the runs down. The thread
+        // allocation counters are deprecated from Marshmallow, but still work.
+        Runtime.getRuntime().gc();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        for (int i = 0; i < measuredRuns; i++) {
+            operation.run();
+        }
+        Debug.stopAllocCounting();
+        long allocations = Debug.getThreadAllocCount() / measuredRuns;
+        long allocatedBytes = Debug.getThreadAllocSize() / measuredRuns;
+
+        Result result = new Result(name, times[measuredRuns / 2], times[0], allocations,
+                allocatedBytes);
+        Log.i(LOG_TAG, result.toString());
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.guardiannews;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmarks the parsing and formatting hot paths against recorded Guardian search responses
+ * with 10, 50 and 200 results, which are in the test assets. Everything runs on in-memory
+ * copies of the responses, so the results don't depend on the network.
+ *
+ * The DOM path is {@link QueryUtils#readFromStream} followed by
+ * {@link QueryUtils#extractResultFromJson}, and the streaming path is
+ * {@link NewsItemJsonParser#parse}. Both build the same {@link NewsItem}s, so comparing them
+ * shows what streaming saves in time and allocations.
+ *
+ * Run with "./gradlew connectedAndroidTest" and collect the results with
+ * "adb logcat -s MicroBenchmark". A debug build logs each line readFromStream reads, so compare
+ * results from the same build type.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParsingBenchmark {
+
+    /** The recorded responses, by number of results. */
+    private static Map<Integer, byte[]> fixtures;
+
+    @BeforeClass
+    public static void loadFixtures() throws IOException {
+        fixtures = TestAssets.loadSearchResponses();
+    }
+
+    @Test
+    public void readFromStream() throws Exception {
+        for (final Map.Entry<Integer, byte[]> fixture : fixtures.entrySet()) {
+            MicroBenchmark.run("readFromStream/" + fixture.getKey(),
+                    new MicroBenchmark.Operation() {
+                        @Override
+                        public void run() throws Exception {
+                            QueryUtils.readFromStream(new ByteArrayInputStream(fixture.getValue()));
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void domParse() throws Exception {
+        for (final Map.Entry<Integer, byte[]> fixture : fixtures.entrySet()) {
+            assertEquals((int) fixture.getKey(), domParse(fixture.getValue()).size());
+
+            MicroBenchmark.run("domParse/" + fixture.getKey(), new MicroBenchmark.Operation() {
+                @Override
+                public void run() throws Exception {
+                    domParse(fixture.getValue());
+                }
+            });
+        }
+    }
+
+    @Test
+    public void extractResultFromJson() throws Exception {
+        for (final Map.Entry<Integer, byte[]> fixture : fixtures.entrySet()) {
+            final String json = new String(fixture.getValue(), Charset.forName("UTF-8"));
+
+            MicroBenchmark.run("extractResultFromJson/" + fixture.getKey(),
+                    new MicroBenchmark.Operation() {
+                        @Override
+                        public void run() {
+                            QueryUtils.extractResultFromJson(json);
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void streamingParse() throws Exception {
+        for (final Map.Entry<Integer, byte[]> fixture : fixtures.entrySet()) {
+            assertEquals((int) fixture.getKey(), streamingParse(fixture.getValue()).size());
+
+            MicroBenchmark.run("streamingParse/" + fixture.getKey(),
+                    new MicroBenchmark.Operation() {
+                        @Override
+                        public void run() throws Exception {
+                            streamingParse(fixture.getValue());
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void domAndStreamingParseAgree() throws Exception {
+        for (byte[] fixture : fixtures.values()) {
+            assertEquals(domParse(fixture), streamingParse(fixture));
+        }
+    }
+
+    @Test
+    public void getContributor() throws Exception {
+        final List<JSONObject> results = getResults(fixtures.get(200));
+
+        MicroBenchmark.run("getContributor/200", new MicroBenchmark.Operation() {
+            @Override
+            public void run() throws Exception {
+                for (JSONObject result : results) {
+                    QueryUtils.getContributor(result);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void formatDate() throws Exception {
+        final List<String> dates = new ArrayList<>();
+        for (JSONObject result : getResults(fixtures.get(200))) {
+            dates.add(result.getString("webPublicationDate"));
+        }
+
+        MicroBenchmark.run("formatDate/200", new MicroBenchmark.Operation() {
+            @Override
+            public void run() {
+                for (String date : dates) {
+                    NewsItemFormatter.formatDate(date);
+                }
+            }
+        });
+    }
+
+    /**
+     * Parses a response the DOM way, reading it all into a String and then into JSONObjects.
+     */
+    private static List<NewsItem> domParse(byte[] response) throws IOException {
+        String json = QueryUtils.readFromStream(new ByteArrayInputStream(response));
+        return QueryUtils.extractResultFromJson(json);
+    }
+
+    /**
+     * Parses a response the streaming way, straight off the stream.
+     */
+    private static List<NewsItem> streamingParse(byte[] response) throws IOException {
+        return NewsItemJsonParser.parse(new ByteArrayInputStream(response), null).getNewsItems();
+    }
+
+    /**
+     * Returns the elements of the results array of a response, as JSONObjects.
+     */
+    private static List<JSONObject> getResults(byte[] response) throws Exception {
+        JSONArray resultsArray = new JSONObject(new String(response, Charset.forName("UTF-8")))
+                .getJSONObject("response").getJSONArray("results");
+
+        List<JSONObject> results = new ArrayList<>();
+        for (int i = 0; i < resultsArray.length(); i++) {
+            results.add(resultsArray.getJSONObject(i));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.android.guardiannews;
+
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * An {@link HttpTransport} which sends every request to the same server, whatever host it was
+ * for, keeping its path and query. This points the whole app at a {@link FakeGuardianServer}.
+ */
+public class RedirectingTransport implements HttpTransport {
+
+    private final Uri baseUri;
+    private final HttpTransport delegate;
+
+    /**
+     * Constructs a new {@link RedirectingTransport}.
+     * @param baseUrl the scheme, host and port to send every request to
+     * @param delegate makes the redirected requests
+     */
+    public RedirectingTransport(String baseUrl, HttpTransport delegate) {
+        this.baseUri = Uri.parse(baseUrl);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        Uri original = Uri.parse(request.getUrl());
+        String redirected = original.buildUpon()
+                .scheme(baseUri.getScheme())
+                .encodedAuthority(baseUri.getEncodedAuthority())
+                .build()
+                .toString();
+
+        return delegate.execute(new Request(redirected, request.getConnectTimeoutMillis(),
+                request.getReadTimeoutMillis(), request.getUseCaches(),
+                request.getCacheControl()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.guardiannews;
+
+import android.support.test.InstrumentationRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads the recorded responses in the test assets.
+ */
+public class TestAssets {
+
+    /** The sizes of the recorded Guardian search responses, in results. */
+    public static final int[] SEARCH_RESPONSE_SIZES = {10, 50, 200};
+
+    /**
+     * Create a private constructor because no one should ever create a {@link TestAssets}
+     * object. This class is only meant to hold static methods.
+     */
+    private TestAssets() {
+    }
+
+    /**
+     * Returns the recorded Guardian search responses, by number of results.
+     */
+    public static Map<Integer, byte[]> loadSearchResponses() throws IOException {
+        Map<Integer, byte[]> responses = new LinkedHashMap<>();
+        for (int size : SEARCH_RESPONSE_SIZES) {
+            responses.put(size, load("guardian_search_" + size + ".json"));
+        }
+        return responses;
+    }
+
+    /**
+     * Returns a recorded thumbnail, as the encoded JPEG.
+     */
+    public static byte[] loadThumbnail() throws IOException {
+        return load("thumbnail.jpg");
+    }
+
+    /**
+     * Returns the contents of a file in the test assets.
+     */
+    public static byte[] load(String name) throws IOException {
+        InputStream input = InstrumentationRegistry.getContext().getAssets().open(name);
+        try {
+            return DiskCache.readFully(input);
+        } finally {
+            DiskCache.closeQuietly(input);
+        }
+    }
+}
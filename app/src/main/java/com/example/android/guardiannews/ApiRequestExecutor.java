@@ -0,0 +1,151 @@
+package com.example.android.guardiannews;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * An {@link ApiRequestExecutor} makes requests to an API which may fail on a flaky network.
+ * A request which fails in a way that might not happen again is retried with exponential
+ * backoff and jitter, but never beyond the deadline the caller gives, so the worst case time
+ * a load takes is bounded rather than being a stack of timeouts. A {@link CircuitBreaker} stops
+ * requests being made at all once the API has failed too many times in a row.
+ */
+public class ApiRequestExecutor {
+
+    private static final String LOG_TAG = ApiRequestExecutor.class.getName();
+
+    /**
+     * Makes a single attempt at a request.
+     */
+    public interface Attempt {
+        /**
+         * Makes the request.
+         * @param timeoutMillis the longest the request may take to connect, or wait for data
+         *                      once connected, in ms
+         * @return the result, whose {@link NewsPage#getError()} says whether it worked
+         */
+        NewsPage attempt(int timeoutMillis);
+    }
+
+    /** The maximum number of times a request is made, including the first. */
+    private final int maxAttempts;
+
+    /** The longest the first backoff can be, in ms. Doubles with every retry. */
+    private final long initialBackoffMillis;
+
+    /** The longest any backoff can be, in ms. */
+    private final long maxBackoffMillis;
+
+    /** Stops requests being made while the API keeps failing. */
+    private final CircuitBreaker circuitBreaker;
+
+    /** Picks how long to back off for, within the limit for each retry. */
+    private final Random random = new Random();
+
+    /**
+     * Constructs a new {@link ApiRequestExecutor}.
+     * @param maxAttempts the maximum number of times a request is made, including the first
+     * @param initialBackoffMillis the longest the first backoff can be, in ms
+     * @param maxBackoffMillis the longest any backoff can be, in ms
+     * @param circuitBreaker stops requests being made while the API keeps failing
+     */
+    public ApiRequestExecutor(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis,
+                              CircuitBreaker circuitBreaker) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Makes a request, retrying it if it fails in a way that might not happen again, until it
+     * works, runs out of attempts, or the deadline passes.
+     * @param attempt makes a single attempt at the request
+     * @param deadlineMillis when the request must be finished by, in ms since boot as given by
+     *                       {@link SystemClock#elapsedRealtime()}
+     * @param maxTimeoutMillis the longest a single attempt may wait for the server, in ms. It's
+     *                         cut short if there's less time than this left before the deadline.
+     * @param page the number of the page being requested, used for the result if no attempt
+     *             could be made
+     * @return the result of the last attempt, or an empty page with
+     * {@link LoadError#SERVICE_UNAVAILABLE} or {@link LoadError#TIMEOUT} if no attempt was made
+     */
+    public NewsPage execute(Attempt attempt, long deadlineMillis, int maxTimeoutMillis,
+                            int page) {
+        NewsPage result = null;
+
+        for (int attemptNumber = 0; attemptNumber < maxAttempts; attemptNumber++) {
+            long remaining = deadlineMillis - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            if (!circuitBreaker.allowRequest()) {
+                Metrics.increment(Metrics.CIRCUIT_OPEN_REJECTIONS);
+                return failedPage(page, LoadError.SERVICE_UNAVAILABLE);
+            }
+
+            try {
+                result = attempt.attempt((int) Math.min(maxTimeoutMillis, remaining));
+            } catch (RuntimeException e) {
+                // Whatever happened, the breaker has to hear about it, or a trial request would
+                // never finish and the circuit would stay open for good
+                circuitBreaker.recordFailure();
+                throw e;
+            }
+            LoadError error = result.getError();
+
+            if (error == LoadError.NONE) {
+                circuitBreaker.recordSuccess();
+                return result;
+            }
+            if (!error.isRetryable()) {
+                // The server answered and retrying won't change its mind, but a malformed
+                // response or a rejected request doesn't show that the server is healthy
+                circuitBreaker.recordNeutral();
+                return result;
+            }
+
+            circuitBreaker.recordFailure();
+            if (attemptNumber == maxAttempts - 1) {
+                break;
+            }
+
+            // Wait a random time up to the backoff limit for this retry, so that clients which
+            // failed together don't all retry together
+            long backoffLimit = Math.min(maxBackoffMillis, initialBackoffMillis << attemptNumber);
+            long backoff = (long) (random.nextDouble() * backoffLimit);
+            if (SystemClock.elapsedRealtime() + backoff >= deadlineMillis) {
+                break;
+            }
+
+            Log.w(LOG_TAG, "Request failed with " + error + ", retrying in " + backoff + "ms");
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // The caller no longer wants the result, so leave the interrupt for it to see
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return result != null ? result : failedPage(page, LoadError.TIMEOUT);
+    }
+
+    /**
+     * Returns true if requests are currently being refused because the API keeps failing.
+     */
+    public boolean isCircuitOpen() {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * Returns an empty page for a request which couldn't be made.
+     */
+    private static NewsPage failedPage(int page, LoadError error) {
+        return new NewsPage(new ArrayList<NewsItem>(), page, page, error);
+    }
+}
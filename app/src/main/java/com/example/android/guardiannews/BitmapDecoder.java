@@ -0,0 +1,160 @@
+package com.example.android.guardiannews;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Decodes encoded images into {@link Bitmap}s no bigger than they need to be for the
+ * {@link android.widget.ImageView} they'll be shown in.
+ */
+public class BitmapDecoder {
+
+    private static final String LOG_TAG = BitmapDecoder.class.getName();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BitmapDecoder}
+     * object. This class is only meant to hold static methods.
+     */
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodes an encoded image, downsampling it so that it's no more than about twice the size
+     * of the target in each dimension. The image's bounds are read first, so that the full size
+     * image is never decoded.
+     * @param bytes the encoded image
+     * @param targetWidth the width of the view the image will be shown in, in pixels
+     * @param targetHeight the height of the view the image will be shown in, in pixels
+     * @param config the pixel format to decode to, e.g. {@link Bitmap.Config#RGB_565} for images
+     *               with no transparency to use half the memory of ARGB_8888
+     * @param imageCache where a bitmap which is no longer used can be found, whose memory can be
+     *                   reused for this one. May be null.
+     * @return the decoded bitmap, or null if the bytes aren't a valid image
+     */
+    public static Bitmap decodeSampledBitmap(byte[] bytes, int targetWidth, int targetHeight,
+                                             Bitmap.Config config, ImageCache imageCache) {
+        // Only read the dimensions of the image, without allocating memory for its pixels
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Now decode the image properly, at the reduced size
+        options.inSampleSize =
+                calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inPreferredConfig = config;
+        options.inJustDecodeBounds = false;
+
+        if (imageCache != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            addInBitmapOptions(options, imageCache);
+        }
+
+        try {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            // The bitmap we tried to reuse wasn't suitable after all, so decode without it
+            Log.w(LOG_TAG, "Problem reusing bitmap, decodeSampledBitmap", e);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+    }
+
+    /**
+     * Checks whether the given bytes are an image that can be decoded, by reading its bounds
+     * without allocating memory for its pixels.
+     * @param bytes the encoded image
+     * @return true if the bytes are a valid image
+     */
+    public static boolean isImage(byte[] bytes) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    /**
+     * Works out the largest power of two that the image can be divided by in each dimension,
+     * while still being at least as big as the target.
+     * @param width the width of the full size image
+     * @param height the height of the full size image
+     * @param targetWidth the width the image will be shown at
+     * @param targetHeight the height the image will be shown at
+     * @return the value to use for {@link BitmapFactory.Options#inSampleSize}
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return inSampleSize;
+        }
+
+        while ((width / (inSampleSize * 2)) >= targetWidth
+                && (height / (inSampleSize * 2)) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Asks the {@link ImageCache} for a bitmap which is no longer used and is big enough to
+     * hold the decoded image, and tells the decoder to reuse its memory if one is found.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void addInBitmapOptions(BitmapFactory.Options options, ImageCache imageCache) {
+        // inBitmap only works with mutable bitmaps
+        options.inMutable = true;
+
+        Bitmap reusable = imageCache.getReusableBitmap(options);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+        }
+    }
+
+    /**
+     * Checks whether the memory of a bitmap can be reused to decode an image with the given
+     * options. Before KitKat the bitmap must be exactly the same size as the decoded image, and
+     * the image can't be downsampled. From KitKat onwards it just needs enough bytes.
+     * @param candidate the bitmap which might be reused
+     * @param options the options the image will be decoded with, with its bounds already read
+     * @return true if the candidate can be used as {@link BitmapFactory.Options#inBitmap}
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static boolean canUseForInBitmap(Bitmap candidate, BitmapFactory.Options options) {
+        if (!candidate.isMutable()) {
+            return false;
+        }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return candidate.getWidth() == options.outWidth
+                    && candidate.getHeight() == options.outHeight
+                    && options.inSampleSize == 1;
+        }
+
+        int sampleSize = Math.max(options.inSampleSize, 1);
+        int width = options.outWidth / sampleSize;
+        int height = options.outHeight / sampleSize;
+        int byteCount = width * height * getBytesPerPixel(options.inPreferredConfig);
+        return byteCount <= candidate.getAllocationByteCount();
+    }
+
+    /**
+     * Returns the number of bytes used to store each pixel of a bitmap with the given config.
+     */
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null || config == Bitmap.Config.ARGB_8888) {
+            return 4;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else {
+            // ALPHA_8, or a config that doesn't exist yet, in which case assume the worst
+            return config == Bitmap.Config.ALPHA_8 ? 1 : 4;
+        }
+    }
+}
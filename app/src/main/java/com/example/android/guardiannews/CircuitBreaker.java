@@ -0,0 +1,112 @@
+package com.example.android.guardiannews;
+
+import android.os.SystemClock;
+
+/**
+ * A {@link CircuitBreaker} stops requests being made to a server which keeps failing, so that
+ * a struggling server isn't hammered with more requests and the user isn't kept waiting for
+ * requests which are bound to fail.
+ *
+ * After a number of failures in a row the circuit opens, and requests are refused for a while.
+ * Once that time is up a single trial request is let through: if it works the circuit closes
+ * again, and if it fails the circuit stays open for another while.
+ */
+public class CircuitBreaker {
+
+    /** The number of failures in a row which opens the circuit. */
+    private final int failureThreshold;
+
+    /** How long the circuit stays open before a trial request is let through, in ms. */
+    private final long openMillis;
+
+    /** The number of failures since the last success. */
+    private int consecutiveFailures;
+
+    /** When the circuit opened, in ms since boot, or -1 if it's closed. */
+    private long openedAt = -1;
+
+    /** True while the trial request is in flight, so that only one is let through. */
+    private boolean trialInFlight;
+
+    /**
+     * Constructs a new {@link CircuitBreaker}, which starts off closed.
+     * @param failureThreshold the number of failures in a row which opens the circuit
+     * @param openMillis how long the circuit stays open before a trial request, in ms
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Returns true if a request can be made now. If this lets through the trial request of an
+     * open circuit, its result must be reported with {@link #recordSuccess()},
+     * {@link #recordFailure()} or {@link #recordNeutral()}.
+     */
+    public synchronized boolean allowRequest() {
+        if (openedAt < 0) {
+            return true;
+        }
+
+        if (!trialInFlight && elapsedRealtime() - openedAt >= openMillis) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports that a request worked, which closes the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        openedAt = -1;
+        trialInFlight = false;
+    }
+
+    /**
+     * Reports that a request failed, which opens the circuit if there have been too many
+     * failures in a row, or keeps it open if this was the trial request.
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (trialInFlight || consecutiveFailures >= failureThreshold) {
+            openedAt = elapsedRealtime();
+        }
+        trialInFlight = false;
+    }
+
+    /**
+     * Reports that a request got an answer which says nothing about whether the server is
+     * healthy, e.g. a response which couldn't be parsed, or the server refusing the request
+     * itself. The circuit and the number of failures are left as they are, but if this was the
+     * trial request, another one can be let through.
+     */
+    public synchronized void recordNeutral() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Closes the circuit and forgets any failures, as if the {@link CircuitBreaker} had just
+     * been created.
+     */
+    public synchronized void reset() {
+        consecutiveFailures = 0;
+        openedAt = -1;
+        trialInFlight = false;
+    }
+
+    /**
+     * Returns true if the circuit is open, so requests are currently being refused.
+     */
+    public synchronized boolean isOpen() {
+        return openedAt >= 0;
+    }
+
+    /**
+     * Returns the time since boot, in ms. Tests override this to move time along.
+     */
+    long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.android.guardiannews;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A {@link DiskCache} stores raw bytes in files under a directory, keyed by a string such as a
+ * URL. When the total size of the files goes over the limit, the least recently used files are
+ * deleted until it's back under the limit.
+ *
+ * All of the methods touch the file system, so they should only be called on a background thread.
+ */
+public class DiskCache {
+
+    private static final String LOG_TAG = DiskCache.class.getName();
+
+    /** The suffix given to files while they are still being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The directory that the cached files are stored in. */
+    private final File directory;
+
+    /** The maximum number of bytes the cached files can take up in total. */
+    private final long maxBytes;
+
+    /** The number of bytes the cached files currently take up, or -1 before the first scan. */
+    private long currentBytes = -1;
+
+    /**
+     * Constructs a new {@link DiskCache}.
+     * @param directory the directory that the cached files should be stored in
+     * @param maxBytes the maximum number of bytes the cached files can take up in total
+     */
+    public DiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the bytes stored for the given key, and marks them as recently used.
+     * @param key the key the bytes were stored with
+     * @return the stored bytes, or null if nothing is stored for the key
+     */
+    public synchronized byte[] get(String key) {
+        ensureInitialised();
+
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            byte[] bytes = readFully(input);
+            // Mark the file as recently used, so it's one of the last to be evicted
+            file.setLastModified(System.currentTimeMillis());
+            return bytes;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cached file for " + key, e);
+            return null;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Returns true if bytes are stored for the given key, without reading them.
+     */
+    public synchronized boolean contains(String key) {
+        ensureInitialised();
+        return fileFor(key).exists();
+    }
+
+    /**
+     * Stores the given bytes for the given key, replacing anything already stored for it, and
+     * evicts the least recently used files if the cache is now over its size limit.
+     * @param key the key to store the bytes with
+     * @param bytes the bytes to store
+     */
+    public synchronized void put(String key, byte[] bytes) {
+        ensureInitialised();
+
+        // Write to a temporary file first and then rename it, so that a half-written file is
+        // never mistaken for a complete one
+        File file = fileFor(key);
+        File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(bytes);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing cached file for " + key, e);
+            tempFile.delete();
+            return;
+        } finally {
+            closeQuietly(output);
+        }
+
+        long previousLength = file.length();
+        if (tempFile.renameTo(file)) {
+            currentBytes += file.length() - previousLength;
+            trimToSize(maxBytes);
+        } else {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache takes up no more than the given
+     * number of bytes.
+     * @param targetBytes the maximum number of bytes the cache should take up afterwards
+     */
+    public synchronized void trimToSize(long targetBytes) {
+        ensureInitialised();
+
+        if (currentBytes <= targetBytes) {
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        // Oldest first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (currentBytes <= targetBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                currentBytes -= length;
+            }
+        }
+    }
+
+    /**
+     * Makes sure the cache directory exists and works out how much space is being used, the
+     * first time the cache is accessed.
+     */
+    private void ensureInitialised() {
+        if (currentBytes >= 0) {
+            return;
+        }
+
+        currentBytes = 0;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Problem creating cache directory " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                // Clear up any files left half-written by a previous process
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else {
+                    currentBytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file that the bytes for a key are stored in. Keys are hashed, so that URLs
+     * can be used as keys without worrying about which characters are allowed in file names.
+     */
+    private File fileFor(String key) {
+        return new File(directory, hashKey(key));
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every Android device has MD5 and UTF-8, so this should never happen
+            return String.valueOf(key.hashCode());
+        }
+    }
+
+    /**
+     * Reads everything from the given {@link InputStream} into a byte array.
+     */
+    static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing stream", e);
+            }
+        }
+    }
+}
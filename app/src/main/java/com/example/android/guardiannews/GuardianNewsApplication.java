@@ -0,0 +1,60 @@
+package com.example.android.guardiannews;
+
+import android.app.Application;
+import android.net.http.HttpResponseCache;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sets up the process-wide state the app relies on before any activity is created.
+ */
+public class GuardianNewsApplication extends Application {
+
+    private static final String LOG_TAG = GuardianNewsApplication.class.getName();
+
+    /** The name of the directory in the app's cache directory that HTTP responses go in. */
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+
+    /** The maximum number of bytes the cached HTTP responses can take up. */
+    private static final long HTTP_CACHE_BYTES = 10 * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        installHttpCache();
+
+        // Keep the stored news items fresh in the background, where JobScheduler is available
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            NewsSyncJobService.schedule(this);
+        }
+    }
+
+    /**
+     * Installs a response cache for every {@link java.net.HttpURLConnection} the app makes.
+     * Responses are stored along with their ETag and Last-Modified validators, so once a cached
+     * response is stale, the next request for it is made conditional and costs a 304 rather
+     * than the whole response if nothing has changed.
+     */
+    private void installHttpCache() {
+        try {
+            File httpCacheDir = new File(getCacheDir(), HTTP_CACHE_DIRECTORY);
+            HttpResponseCache.install(httpCacheDir, HTTP_CACHE_BYTES);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem installing HTTP response cache", e);
+        }
+    }
+
+    /**
+     * Writes anything the HTTP response cache has buffered out to disk. This should be called
+     * when the app goes into the background, since the process may be killed at any point after.
+     */
+    public static void flushHttpCache() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+}
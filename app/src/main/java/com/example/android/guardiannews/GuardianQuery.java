@@ -0,0 +1,203 @@
+package com.example.android.guardiannews;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link GuardianQuery} describes a search of the Guardian content API, such as the news items
+ * about a topic the user follows. Queries are made with a {@link Builder}, for example:
+ * <pre>
+ *     GuardianQuery query = new GuardianQuery.Builder()
+ *             .terms("john mayer")
+ *             .section("music")
+ *             .orderBy(GuardianQuery.ORDER_BY_NEWEST)
+ *             .build();
+ * </pre>
+ */
+public class GuardianQuery {
+
+    private static final String SEARCH_URL = "http://content.guardianapis.com/search";
+
+    private static final String API_KEY = "test";
+
+    public static final String ORDER_BY_NEWEST = "newest";
+    public static final String ORDER_BY_OLDEST = "oldest";
+    public static final String ORDER_BY_RELEVANCE = "relevance";
+
+    /** The fields every query asks for, since they're needed to build a {@link NewsItem}. */
+    private static final String REQUIRED_FIELDS = "thumbnail";
+
+    /** The tags every query asks for, since they're needed to build a {@link NewsItem}. */
+    private static final String REQUIRED_TAGS = "contributor";
+
+    /** The search terms, or null to match everything. */
+    private final String terms;
+    /** The IDs of the sections to search in, any of which can match. */
+    private final List<String> sections;
+    /** The IDs of the tags that results must have, all of which must match. */
+    private final List<String> tags;
+    /** The earliest publication date, in the format "2015-08-05", or null. */
+    private final String fromDate;
+    /** The latest publication date, in the format "2015-08-05", or null. */
+    private final String toDate;
+    /** Any fields to show for each result, on top of the ones always asked for. */
+    private final List<String> fields;
+    /** The order of the results, one of the ORDER_BY constants. */
+    private final String orderBy;
+
+    private GuardianQuery(Builder builder) {
+        terms = builder.terms;
+        sections = Collections.unmodifiableList(new ArrayList<>(builder.sections));
+        tags = Collections.unmodifiableList(new ArrayList<>(builder.tags));
+        fromDate = builder.fromDate;
+        toDate = builder.toDate;
+        fields = Collections.unmodifiableList(new ArrayList<>(builder.fields));
+        orderBy = builder.orderBy;
+    }
+
+    public String getTerms() {
+        return terms;
+    }
+
+    public List<String> getSections() {
+        return sections;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getFromDate() {
+        return fromDate;
+    }
+
+    public String getToDate() {
+        return toDate;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * Returns the URL for one page of this query's results.
+     * @param page the number of the page, starting from 1
+     * @param pageSize the number of results on each page
+     * @param since only include news items published on or after the day of this date, which is
+     *              in the format "2015-08-05T19:24:32Z". Overrides the query's own from date if
+     *              it's later. May be null.
+     */
+    public String toUrl(int page, int pageSize, String since) {
+        Uri.Builder uri = Uri.parse(SEARCH_URL).buildUpon()
+                .appendQueryParameter("api-key", API_KEY)
+                .appendQueryParameter("format", "json");
+
+        if (!TextUtils.isEmpty(terms)) {
+            // Quote the terms so that they're searched for as a phrase
+            uri.appendQueryParameter("q", "\"" + terms + "\"");
+        }
+        if (!sections.isEmpty()) {
+            // "|" means OR in the content API
+            uri.appendQueryParameter("section", TextUtils.join("|", sections));
+        }
+        if (!tags.isEmpty()) {
+            // "," means AND in the content API
+            uri.appendQueryParameter("tag", TextUtils.join(",", tags));
+        }
+
+        // The API only filters by day, so just use the "2015-08-05" part of the date
+        String effectiveFromDate = fromDate;
+        if (!TextUtils.isEmpty(since) && since.length() >= 10) {
+            String sinceDay = since.substring(0, 10);
+            if (effectiveFromDate == null || sinceDay.compareTo(effectiveFromDate) > 0) {
+                effectiveFromDate = sinceDay;
+            }
+        }
+        if (effectiveFromDate != null) {
+            uri.appendQueryParameter("from-date", effectiveFromDate);
+        }
+        if (toDate != null) {
+            uri.appendQueryParameter("to-date", toDate);
+        }
+
+        List<String> showFields = new ArrayList<>(fields);
+        if (!showFields.contains(REQUIRED_FIELDS)) {
+            showFields.add(0, REQUIRED_FIELDS);
+        }
+        uri.appendQueryParameter("show-fields", TextUtils.join(",", showFields))
+                .appendQueryParameter("show-tags", REQUIRED_TAGS)
+                .appendQueryParameter("order-by", orderBy)
+                .appendQueryParameter("page", String.valueOf(page))
+                .appendQueryParameter("page-size", String.valueOf(pageSize));
+
+        return uri.build().toString();
+    }
+
+    /**
+     * Builds a {@link GuardianQuery}. Every part of the query is optional, and results are
+     * ordered newest first unless something else is asked for.
+     */
+    public static class Builder {
+        private String terms;
+        private final List<String> sections = new ArrayList<>();
+        private final List<String> tags = new ArrayList<>();
+        private String fromDate;
+        private String toDate;
+        private final List<String> fields = new ArrayList<>();
+        private String orderBy = ORDER_BY_NEWEST;
+
+        /** Search for news items containing the given phrase. */
+        public Builder terms(String terms) {
+            this.terms = terms;
+            return this;
+        }
+
+        /** Include news items from the section with the given ID, e.g. "music". */
+        public Builder section(String sectionId) {
+            sections.add(sectionId);
+            return this;
+        }
+
+        /** Only include news items with the tag with the given ID, e.g. "music/johnmayer". */
+        public Builder tag(String tagId) {
+            tags.add(tagId);
+            return this;
+        }
+
+        /** Only include news items published on or after the given date, e.g. "2015-08-05". */
+        public Builder fromDate(String fromDate) {
+            this.fromDate = fromDate;
+            return this;
+        }
+
+        /** Only include news items published on or before the given date, e.g. "2015-08-05". */
+        public Builder toDate(String toDate) {
+            this.toDate = toDate;
+            return this;
+        }
+
+        /** Ask for an extra field for each result, e.g. "trailText". */
+        public Builder field(String field) {
+            fields.add(field);
+            return this;
+        }
+
+        /** Order the results, using one of the ORDER_BY constants. */
+        public Builder orderBy(String orderBy) {
+            this.orderBy = orderBy;
+            return this;
+        }
+
+        public GuardianQuery build() {
+            return new GuardianQuery(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.guardiannews;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link HttpTransport} makes HTTP GET requests on behalf of the rest of the app, both to
+ * the Guardian API and for thumbnails. The app uses {@link UrlConnectionTransport}, but another
+ * transport can be given to {@link QueryUtils#setHttpTransport(HttpTransport)}, e.g. to send
+ * every request to a local server when measuring performance under controlled conditions.
+ */
+public interface HttpTransport {
+
+    /**
+     * Makes a GET request. The caller must close the response once it's done with it.
+     * @param request what to request, and how
+     * @return the response, whatever its response code
+     * @throws IOException if no response could be got, e.g. because of a timeout
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * A GET request to be made by an {@link HttpTransport}.
+     */
+    class Request {
+        private final String url;
+        private final int connectTimeoutMillis;
+        private final int readTimeoutMillis;
+        private final boolean useCaches;
+        private final String cacheControl;
+
+        /**
+         * Constructs a new {@link Request}.
+         * @param url the URL to request
+         * @param connectTimeoutMillis the longest the request may take to connect, in ms
+         * @param readTimeoutMillis the longest the request may wait for more data once
+         *                          connected, in ms
+         * @param useCaches true if the HTTP response cache may be used
+         * @param cacheControl the value of the Cache-Control header to send, or null for none
+         */
+        public Request(String url, int connectTimeoutMillis, int readTimeoutMillis,
+                       boolean useCaches, String cacheControl) {
+            this.url = url;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.readTimeoutMillis = readTimeoutMillis;
+            this.useCaches = useCaches;
+            this.cacheControl = cacheControl;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+
+        public boolean getUseCaches() {
+            return useCaches;
+        }
+
+        public String getCacheControl() {
+            return cacheControl;
+        }
+    }
+
+    /**
+     * The response to a {@link Request}. Closing it frees the connection it came over, so that
+     * the connection can be reused. If the response couldn't be read properly, it should be
+     * aborted instead.
+     */
+    interface Response {
+        int getCode();
+
+        /**
+         * Returns the body of the response, or of the error if the response code isn't 2xx.
+         * @return the body, or null if there isn't one
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * Finishes with the response once it has been read, reading whatever is left of it so
+         * that the connection can be reused.
+         */
+        void close();
+
+        /**
+         * Finishes with the response without reading any more of it, and closes the connection.
+         * Used when reading the response failed part way through, e.g. because it timed out or
+         * couldn't be parsed, since waiting for the rest of it could take as long again.
+         */
+        void abort();
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.guardiannews;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.LruCache;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * An {@link ImageCache} keeps thumbnails around so that they don't have to be downloaded and
+ * decoded again. It has two tiers, both keyed by the thumbnail URL:
+ * <ul>
+ *     <li>a memory tier, which holds decoded {@link Bitmap}s up to a limit in bytes</li>
+ *     <li>a disk tier, which holds the raw encoded image bytes as they were downloaded</li>
+ * </ul>
+ * It also keeps a pool of bitmaps which are no longer used, so that their memory can be reused
+ * by {@link BitmapDecoder} rather than allocating a new bitmap for every decoded thumbnail.
+ *
+ * There is only one {@link ImageCache} per process, so that the cached images survive activity
+ * recreations and reloads. It's told when the system is running low on memory, and gives up
+ * memory a tier at a time: first the pool of bitmaps which aren't shown anywhere, then part of
+ * the memory tier, and finally all of it. Anything dropped from the memory tier is still on
+ * disk, so it's decoded again from there the next time it's needed.
+ */
+public class ImageCache implements ComponentCallbacks2 {
+
+    /** The name of the directory in the app's cache directory that images are stored in. */
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+
+    /** The maximum number of bytes the images on disk can take up. */
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+
+    /** The fraction of the app's memory class which the decoded bitmaps can take up. */
+    private static final int MEMORY_CACHE_FRACTION = 8;
+
+    private static ImageCache instance;
+
+    /** Decoded bitmaps, sized by the number of bytes each one uses. */
+    private final LruCache<String, Bitmap> memoryCache;
+
+    /** The raw bytes of downloaded images. */
+    private final DiskCache diskCache;
+
+    /**
+     * Bitmaps which are no longer used, whose memory can be reused when decoding. Soft references
+     * are used so the garbage collector can still free them if memory runs low.
+     */
+    private final Set<SoftReference<Bitmap>> reusableBitmaps = new HashSet<>();
+
+    /**
+     * Returns the {@link ImageCache} for this process, creating it the first time it's needed.
+     * @param context any {@link Context} of the app
+     */
+    public static synchronized ImageCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+
+            // Use a fraction of the memory the app is allowed, which is given in megabytes
+            ActivityManager activityManager =
+                    (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+            int memoryCacheBytes =
+                    activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_FRACTION;
+
+            instance = new ImageCache(memoryCacheBytes,
+                    new File(appContext.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_BYTES);
+            appContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Constructs a new {@link ImageCache}.
+     * @param memoryCacheBytes the maximum number of bytes the decoded bitmaps can take up
+     * @param diskCacheDirectory the directory the raw image bytes are stored in
+     * @param diskCacheBytes the maximum number of bytes the images on disk can take up
+     */
+    ImageCache(int memoryCacheBytes, File diskCacheDirectory, long diskCacheBytes) {
+        memoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        diskCache = new DiskCache(diskCacheDirectory, diskCacheBytes);
+    }
+
+    /**
+     * Returns the decoded bitmap for the given URL if it's held in memory. This doesn't touch
+     * the disk, so it's safe to call on the main thread.
+     * @param url the URL of the image
+     * @return the bitmap, or null if it isn't in the memory cache
+     */
+    public Bitmap getBitmapFromMemory(String url) {
+        return memoryCache.get(url);
+    }
+
+    /**
+     * Stores a decoded bitmap for the given URL in the memory cache.
+     */
+    public void putBitmapInMemory(String url, Bitmap bitmap) {
+        memoryCache.put(url, bitmap);
+    }
+
+    /**
+     * Offers a bitmap which is no longer shown or cached anywhere, so that its memory can be
+     * reused by a later decode.
+     */
+    public void addReusableBitmap(Bitmap bitmap) {
+        if (bitmap.isMutable()) {
+            synchronized (reusableBitmaps) {
+                reusableBitmaps.add(new SoftReference<>(bitmap));
+            }
+        }
+    }
+
+    /**
+     * Finds a bitmap in the pool whose memory can be reused to decode an image with the given
+     * options, and removes it from the pool.
+     * @param options the options the image will be decoded with, with its bounds already read
+     * @return a bitmap to use as {@link BitmapFactory.Options#inBitmap}, or null if there isn't one
+     */
+    public Bitmap getReusableBitmap(BitmapFactory.Options options) {
+        synchronized (reusableBitmaps) {
+            Iterator<SoftReference<Bitmap>> iterator = reusableBitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap candidate = iterator.next().get();
+                if (candidate == null) {
+                    // Already freed by the garbage collector
+                    iterator.remove();
+                } else if (BitmapDecoder.canUseForInBitmap(candidate, options)) {
+                    iterator.remove();
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives up memory according to how short of it the system is. The levels are ordered, so
+     * each one gives up at least as much as the ones below it.
+     * @param level one of the TRIM_MEMORY levels in {@link ComponentCallbacks2}
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        // The pooled bitmaps aren't shown anywhere, so they're the cheapest to give up. They're
+        // only there to save allocations, and decoding works just as well without them.
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            clearReusableBitmaps();
+        }
+
+        if (level >= TRIM_MEMORY_MODERATE) {
+            // The process is in the background, and is one of the next to be killed
+            memoryCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimMemoryCache(memoryCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Drops every bitmap in the pool of bitmaps which can be reused.
+     */
+    private void clearReusableBitmaps() {
+        synchronized (reusableBitmaps) {
+            reusableBitmaps.clear();
+        }
+    }
+
+    /**
+     * Drops the least recently used bitmaps from the memory tier until the rest take up no more
+     * than the given number of bytes. Bitmaps which are still shown on screen stay alive until
+     * their rows are recycled, since they aren't recycled when they're dropped.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    private void trimMemoryCache(int maxBytes) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            memoryCache.trimToSize(maxBytes);
+        } else {
+            // LruCache can't be trimmed to a size before Jelly Bean MR1
+            memoryCache.evictAll();
+        }
+    }
+
+    /**
+     * Returns the raw image bytes stored on disk for the given URL. Background thread only.
+     * @param url the URL of the image
+     * @return the encoded image, or null if it isn't in the disk cache
+     */
+    public byte[] getBytesFromDisk(String url) {
+        return diskCache.get(url);
+    }
+
+    /**
+     * Returns true if the raw image bytes for the given URL are stored on disk. Background
+     * thread only.
+     */
+    public boolean isOnDisk(String url) {
+        return diskCache.contains(url);
+    }
+
+    /**
+     * Stores the raw image bytes for the given URL on disk. Background thread only.
+     */
+    public void putBytesOnDisk(String url, byte[] bytes) {
+        diskCache.put(url, bytes);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.android.guardiannews;
+
+import android.util.Log;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads images, such as thumbnails, for everything in the process that needs them.
+ * <ul>
+ *     <li>Concurrent downloads of the same URL are coalesced into one, so two rows, or a row
+ *     and a prefetch, which want the same thumbnail at the same time only download it once.</li>
+ *     <li>Downloads run on a pool of {@link #MAX_REQUESTS_PER_HOST} threads for each host, so
+ *     no more than that many requests are made to one host at the same time, and the rest wait
+ *     for a turn.</li>
+ * </ul>
+ * Because downloads run on their own threads, a caller which stops waiting, e.g. because the
+ * row it was for has been recycled and its fetch cancelled, doesn't fail the download for any
+ * other caller sharing it.
+ *
+ * Each response is closed once it has been read, which drains what's left of it so that its
+ * connection can go back into the platform's pool of keep-alive connections.
+ */
+public class ImageDownloader {
+
+    private static final String LOG_TAG = ImageDownloader.class.getName();
+
+    /**
+     * The most downloads from one host which run at the same time. Thumbnails all come from the
+     * same media host, and the platform keeps at most 5 idle keep-alive connections in total,
+     * across every host. Keeping to 4 means each connection a burst of thumbnails opens can go
+     * back into the pool afterwards, while leaving room for the connection to the API host.
+     */
+    public static final int MAX_REQUESTS_PER_HOST = 4;
+
+    /** How long an idle download thread is kept alive before it is allowed to die. */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Makes the request for an image. This is only replaced in tests.
+     */
+    interface Fetcher {
+        /**
+         * Downloads the image at the given URL, returning null if it couldn't be downloaded.
+         */
+        byte[] fetch(String url, int timeoutMillis);
+    }
+
+    /** Downloads images through the transport {@link QueryUtils} uses. */
+    private static final Fetcher DEFAULT_FETCHER = new Fetcher() {
+        @Override
+        public byte[] fetch(String url, int timeoutMillis) {
+            return QueryUtils.getBytesFromURL(url, timeoutMillis);
+        }
+    };
+
+    private static volatile Fetcher fetcher = DEFAULT_FETCHER;
+
+    /** Shares a single download between callers which want the same URL at the same time. */
+    private static final RequestCoalescer<String, byte[]> DOWNLOADS = new RequestCoalescer<>();
+
+    /** The pool of threads for the downloads from each host, keyed by host name. */
+    private static final Map<String, ThreadPoolExecutor> HOST_EXECUTORS = new HashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ImageDownloader}
+     * object. This class is only meant to hold static methods.
+     */
+    private ImageDownloader() {
+    }
+
+    /**
+     * Replaces what makes the requests for images, so tests don't need a server.
+     * @param newFetcher the fetcher to use, or null to go back to the default one
+     */
+    static void setFetcher(Fetcher newFetcher) {
+        fetcher = newFetcher != null ? newFetcher : DEFAULT_FETCHER;
+    }
+
+    /**
+     * Downloads the image at the given URL, or waits for a download of it which is already
+     * running and shares its result. Background thread only.
+     * @param url the URL of the image
+     * @param timeoutMillis the connect and read timeout for the request, in ms
+     * @return the encoded image, or null if it couldn't be downloaded or the calling thread was
+     * interrupted while it waited
+     */
+    public static byte[] download(final String url, final int timeoutMillis) {
+        String host = getHost(url);
+        if (host == null) {
+            // Not a URL with a host, so the request will fail straight away anyway
+            return fetcher.fetch(url, timeoutMillis);
+        }
+
+        Future<byte[]> download = DOWNLOADS.submit(url, new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return fetcher.fetch(url, timeoutMillis);
+            }
+        }, getHostExecutor(host));
+
+        try {
+            return download.get();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem downloading image, download", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            // This caller no longer wants the image, e.g. its row has been recycled. The
+            // download carries on for anyone else who is waiting for it.
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the image at the given URL into the disk cache, if it isn't there already, so
+     * that it can be shown later without going to the network. Nothing is decoded, beyond
+     * checking that the bytes are an image. Background thread only.
+     * @param imageCache the cache to download the image into
+     * @param url the URL of the image
+     * @param timeoutMillis the connect and read timeout for the request, in ms
+     * @return true if the image is now in the disk cache
+     */
+    public static boolean downloadToDisk(ImageCache imageCache, String url, int timeoutMillis) {
+        if (imageCache.isOnDisk(url)) {
+            return true;
+        }
+
+        byte[] bytes = download(url, timeoutMillis);
+        if (bytes == null || !BitmapDecoder.isImage(bytes)) {
+            return false;
+        }
+
+        imageCache.putBytesOnDisk(url, bytes);
+        return true;
+    }
+
+    /**
+     * Returns the host of the given URL, or null if it doesn't have one.
+     */
+    private static String getHost(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host.isEmpty() ? null : host;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the pool of threads for the downloads from the given host, creating it the first
+     * time it's needed.
+     */
+    private static ThreadPoolExecutor getHostExecutor(final String host) {
+        synchronized (HOST_EXECUTORS) {
+            ThreadPoolExecutor executor = HOST_EXECUTORS.get(host);
+            if (executor == null) {
+                executor = new ThreadPoolExecutor(MAX_REQUESTS_PER_HOST, MAX_REQUESTS_PER_HOST,
+                        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger(1);
+
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                return new Thread(runnable,
+                                        LOG_TAG + " " + host + " #" + count.getAndIncrement());
+                            }
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                HOST_EXECUTORS.put(host, executor);
+            }
+            return executor;
+        }
+    }
+}
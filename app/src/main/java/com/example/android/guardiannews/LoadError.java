@@ -0,0 +1,36 @@
+package com.example.android.guardiannews;
+
+/**
+ * The ways fetching news items can fail, so that the user can be told why there's nothing new
+ * rather than just that there are no results.
+ */
+public enum LoadError {
+    /** Nothing went wrong. */
+    NONE,
+
+    /** The server couldn't be reached, e.g. because the device is offline. */
+    NO_CONNECTION,
+
+    /** The load ran out of time before the server responded. */
+    TIMEOUT,
+
+    /** The server responded with an error of its own, or asked us to slow down. */
+    SERVER_ERROR,
+
+    /** The server refused the request itself, e.g. because the API key is wrong. */
+    REQUEST_REJECTED,
+
+    /** The response couldn't be parsed. */
+    BAD_RESPONSE,
+
+    /** Requests have failed so often recently that they've been stopped for a while. */
+    SERVICE_UNAVAILABLE;
+
+    /**
+     * Returns true if making the same request again might work, because the problem was with
+     * the network or the server rather than the request or the response.
+     */
+    public boolean isRetryable() {
+        return this == NO_CONNECTION || this == TIMEOUT || this == SERVER_ERROR;
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.android.guardiannews;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Metrics} keeps counters and histograms of where time and bytes go in the app, from
+ * fetching and parsing the news feed to binding each row of it, so that regressions can be
+ * spotted. Recording a value is cheap enough to do on every call of a hot path. Counters and
+ * histograms are looked up by name in a concurrent map, which doesn't lock once they exist.
+ * After that a counter is a single atomic add, and a histogram takes its own lock to add to one
+ * of a fixed set of buckets, so only threads recording to the same histogram contend.
+ *
+ * Everything recorded since the process started can be printed with {@link #dump(PrintWriter)},
+ * e.g. from "adb shell dumpsys activity", or looked up by name.
+ */
+public class Metrics {
+
+    /** Time from making a request to the Guardian API to getting its response code, in ms. */
+    public static final String NETWORK_LATENCY_MS = "network.latency_ms";
+
+    /** Size of each response body read from the Guardian API, after it has been unzipped. */
+    public static final String RESPONSE_BYTES = "network.response_bytes";
+
+    /** Requests to the Guardian API which failed, by any {@link LoadError}. */
+    public static final String REQUEST_FAILURES = "network.failures";
+
+    /** Requests which weren't made because the circuit breaker was open. */
+    public static final String CIRCUIT_OPEN_REJECTIONS = "network.circuit_open_rejections";
+
+    /**
+     * Time spent parsing each response from the Guardian API, in ms. The response is parsed
+     * as it downloads, so this includes the time spent waiting for the body.
+     */
+    public static final String PARSE_TIME_MS = "parse.time_ms";
+
+    /** News items parsed from responses. */
+    public static final String ITEMS_PARSED = "parse.items";
+
+    /** Time to download each thumbnail which wasn't in the disk cache, in ms. */
+    public static final String THUMBNAIL_DOWNLOAD_MS = "thumbnail.download_ms";
+
+    /** Size of each downloaded thumbnail. */
+    public static final String THUMBNAIL_BYTES = "thumbnail.bytes";
+
+    /** Time to decode each thumbnail, in ms. */
+    public static final String THUMBNAIL_DECODE_MS = "thumbnail.decode_ms";
+
+    /** Thumbnails which were, or weren't, already decoded in the memory cache. */
+    public static final String THUMBNAIL_MEMORY_HITS = "thumbnail.memory_hits";
+    public static final String THUMBNAIL_MEMORY_MISSES = "thumbnail.memory_misses";
+
+    /** Thumbnails which were, or weren't, in the disk cache when they weren't in memory. */
+    public static final String THUMBNAIL_DISK_HITS = "thumbnail.disk_hits";
+    public static final String THUMBNAIL_DISK_MISSES = "thumbnail.disk_misses";
+
+    /**
+     * Time from a load of news items from the network starting to the first of them being handed
+     * to the UI, which is how long the user waits to see anything new, in ms.
+     */
+    public static final String FIRST_BATCH_MS = "render.first_batch_ms";
+
+    /** Time for the adapter to bind each row of the news feed, in microseconds. */
+    public static final String BIND_TIME_US = "render.bind_time_us";
+
+    /** Counters, by name. */
+    private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+
+    /** Histograms, by name. */
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link Metrics} object.
+     * This class is only meant to hold static methods.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Adds one to the counter with the given name.
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given amount to the counter with the given name.
+     */
+    public static void add(String name, long delta) {
+        getCounter(name).addAndGet(delta);
+    }
+
+    /**
+     * Records a value, such as a time or a size, in the histogram with the given name.
+     */
+    public static void record(String name, long value) {
+        getHistogram(name).record(value);
+    }
+
+    /**
+     * Returns the current value of the counter with the given name, which is 0 if nothing has
+     * been counted yet.
+     */
+    public static long getCount(String name) {
+        return getCounter(name).get();
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if nothing has been recorded yet.
+     */
+    public static Histogram getHistogram(String name) {
+        Histogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            // Another thread may create it at the same time, in which case theirs is used
+            Histogram created = new Histogram();
+            histogram = HISTOGRAMS.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the fraction of lookups which were hits, given the names of the counters of hits
+     * and misses, or 0 if there haven't been any lookups.
+     */
+    public static double getHitRatio(String hitsName, String missesName) {
+        long hits = getCount(hitsName);
+        long total = hits + getCount(missesName);
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Prints every counter and histogram, in order of name, along with the thumbnail cache hit
+     * ratios.
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Metrics:");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+        writer.println(String.format("  thumbnail.memory_hit_ratio: %.2f",
+                getHitRatio(THUMBNAIL_MEMORY_HITS, THUMBNAIL_MEMORY_MISSES)));
+        writer.println(String.format("  thumbnail.disk_hit_ratio: %.2f",
+                getHitRatio(THUMBNAIL_DISK_HITS, THUMBNAIL_DISK_MISSES)));
+    }
+
+    /**
+     * Returns everything {@link #dump(PrintWriter)} prints, as a String.
+     */
+    public static String dump() {
+        StringWriter stringWriter = new StringWriter();
+        dump(new PrintWriter(stringWriter));
+        return stringWriter.toString();
+    }
+
+    /**
+     * Clears every counter and histogram.
+     */
+    public static void reset() {
+        COUNTERS.clear();
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if nothing has been counted yet.
+     */
+    private static AtomicLong getCounter(String name) {
+        AtomicLong counter = COUNTERS.get(name);
+        if (counter == null) {
+            // Another thread may create it at the same time, in which case theirs is used
+            AtomicLong created = new AtomicLong();
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * A {@link Histogram} counts how many recorded values fall into each of a fixed set of
+     * buckets, each one twice as wide as the one before, so that it takes the same small amount
+     * of memory however many values are recorded. Percentiles are estimated from the buckets,
+     * so they're only accurate to within a factor of two.
+     */
+    public static class Histogram {
+
+        /** Bucket i holds values from 2^(i-1) up to 2^i - 1, and bucket 0 holds 0. */
+        private final long[] buckets = new long[64];
+
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        /**
+         * Records a value. Negative values are counted as 0.
+         */
+        public synchronized void record(long value) {
+            value = Math.max(value, 0);
+            buckets[64 - Long.numberOfLeadingZeros(value)]++;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns the mean of the recorded values, or 0 if nothing has been recorded.
+         */
+        public synchronized double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Estimates the given percentile of the recorded values, as the upper bound of the
+         * bucket it falls in, capped at the largest value recorded.
+         * @param percentile between 0 and 100
+         * @return the estimate, or 0 if nothing has been recorded
+         */
+        public synchronized long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upperBound, max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return "count=0";
+            }
+            return String.format("count=%d mean=%.1f min=%d p50=%d p90=%d p99=%d max=%d",
+                    count, getMean(), min, getPercentile(50), getPercentile(90),
+                    getPercentile(99), max);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.android.guardiannews;
+
+import android.provider.BaseColumns;
+
+/**
+ * Describes the database tables that {@link NewsStore} keeps {@link NewsItem}s in.
+ */
+public final class NewsContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsContract}
+     * object. This class is only meant to hold constants.
+     */
+    private NewsContract() {
+    }
+
+    /**
+     * The table of stored news items, one row per article on the Guardian website.
+     */
+    public static final class NewsItemEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "news_items";
+
+        /** The URL of the news item on the Guardian website, which identifies it. */
+        public static final String COLUMN_WEB_URL = "web_url";
+        public static final String COLUMN_WEB_TITLE = "web_title";
+        public static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+        public static final String COLUMN_SECTION_NAME = "section_name";
+        /**
+         * The publication date in the format "2015-08-05T19:24:32Z", which sorts in date order
+         * as plain text.
+         */
+        public static final String COLUMN_WEB_PUBLICATION_DATE = "web_publication_date";
+        public static final String COLUMN_CONTRIBUTOR = "contributor";
+
+        private NewsItemEntry() {
+        }
+    }
+
+    /**
+     * A full-text index of the stored news items' titles, section names and contributors, so
+     * they can be searched by prefix without going to the network. Each row's docid is the _ID
+     * of the news item it indexes. Triggers on {@link NewsItemEntry#TABLE_NAME} keep it up to
+     * date, so it's built up as news items are stored.
+     */
+    public static final class NewsSearchEntry {
+
+        public static final String TABLE_NAME = "news_items_fts";
+
+        /** The _ID of the news item a row indexes. This is part of every FTS table. */
+        public static final String COLUMN_DOCID = "docid";
+        public static final String COLUMN_WEB_TITLE = NewsItemEntry.COLUMN_WEB_TITLE;
+        public static final String COLUMN_SECTION_NAME = NewsItemEntry.COLUMN_SECTION_NAME;
+        public static final String COLUMN_CONTRIBUTOR = NewsItemEntry.COLUMN_CONTRIBUTOR;
+
+        private NewsSearchEntry() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.guardiannews;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.guardiannews.NewsContract.NewsItemEntry;
+import com.example.android.guardiannews.NewsContract.NewsSearchEntry;
+
+/**
+ * Creates and upgrades the database that {@link NewsStore} keeps {@link NewsItem}s in.
+ */
+public class NewsDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "news.db";
+
+    private static final int DATABASE_VERSION = 2;
+
+    private static NewsDbHelper instance;
+
+    /**
+     * Returns the {@link NewsDbHelper} for this process, so that every part of the app shares
+     * the same database connection.
+     * @param context any {@link Context} of the app
+     */
+    public static synchronized NewsDbHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new NewsDbHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private NewsDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + NewsItemEntry.TABLE_NAME + " ("
+                + NewsItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + NewsItemEntry.COLUMN_WEB_URL + " TEXT NOT NULL UNIQUE, "
+                + NewsItemEntry.COLUMN_WEB_TITLE + " TEXT NOT NULL, "
+                + NewsItemEntry.COLUMN_THUMBNAIL_URL + " TEXT, "
+                + NewsItemEntry.COLUMN_SECTION_NAME + " TEXT NOT NULL, "
+                + NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE + " TEXT NOT NULL, "
+                + NewsItemEntry.COLUMN_CONTRIBUTOR + " TEXT NOT NULL);");
+
+        // The feed is always read newest first, so index the publication date. The web URL is
+        // already indexed by its UNIQUE constraint.
+        db.execSQL("CREATE INDEX " + NewsItemEntry.TABLE_NAME + "_date_index ON "
+                + NewsItemEntry.TABLE_NAME + " ("
+                + NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE + ");");
+
+        createSearchIndex(db);
+    }
+
+    /**
+     * Creates the full-text index of the stored news items, and the triggers which keep it in
+     * step with the news_items table. FTS4 is used rather than an external content table,
+     * which needs a newer SQLite than the oldest Android versions the app runs on have.
+     */
+    private static void createSearchIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + NewsSearchEntry.TABLE_NAME + " USING fts4("
+                + NewsSearchEntry.COLUMN_WEB_TITLE + ", "
+                + NewsSearchEntry.COLUMN_SECTION_NAME + ", "
+                + NewsSearchEntry.COLUMN_CONTRIBUTOR + ");");
+
+        String indexedColumns = NewsSearchEntry.COLUMN_DOCID + ", "
+                + NewsSearchEntry.COLUMN_WEB_TITLE + ", "
+                + NewsSearchEntry.COLUMN_SECTION_NAME + ", "
+                + NewsSearchEntry.COLUMN_CONTRIBUTOR;
+        String newValues = "new." + NewsItemEntry._ID + ", "
+                + "new." + NewsItemEntry.COLUMN_WEB_TITLE + ", "
+                + "new." + NewsItemEntry.COLUMN_SECTION_NAME + ", "
+                + "new." + NewsItemEntry.COLUMN_CONTRIBUTOR;
+
+        db.execSQL("CREATE TRIGGER " + NewsItemEntry.TABLE_NAME + "_ai AFTER INSERT ON "
+                + NewsItemEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + NewsSearchEntry.TABLE_NAME + " (" + indexedColumns + ") "
+                + "VALUES (" + newValues + "); END;");
+
+        db.execSQL("CREATE TRIGGER " + NewsItemEntry.TABLE_NAME + "_au AFTER UPDATE ON "
+                + NewsItemEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + NewsSearchEntry.TABLE_NAME + " WHERE "
+                + NewsSearchEntry.COLUMN_DOCID + " = old." + NewsItemEntry._ID + "; "
+                + "INSERT INTO " + NewsSearchEntry.TABLE_NAME + " (" + indexedColumns + ") "
+                + "VALUES (" + newValues + "); END;");
+
+        db.execSQL("CREATE TRIGGER " + NewsItemEntry.TABLE_NAME + "_bd BEFORE DELETE ON "
+                + NewsItemEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + NewsSearchEntry.TABLE_NAME + " WHERE "
+                + NewsSearchEntry.COLUMN_DOCID + " = old." + NewsItemEntry._ID + "; END;");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The stored news items are only a cache of the Guardian's, so just start again
+        db.execSQL("DROP TABLE IF EXISTS " + NewsItemEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + NewsSearchEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,365 @@
+package com.example.android.guardiannews;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pages through a news feed made of several queries, newest first, as one list. Each query is
+ * only ever in order with itself: the second page of one query can hold news items newer than
+ * the first page of another. So a {@link NewsFeedCursor} keeps a cursor into each query, and
+ * merges them the way a k-way merge does. A news item is only handed out once every query has
+ * fetched a news item at least as old as it, since until then a news item the query hasn't
+ * fetched yet could be newer. That only works if every query returns its results newest first,
+ * so queries in any other order are rejected.
+ *
+ * Each call fetches only the pages it needs to, the next page of every query that it has run
+ * out of at the same time. News items which have been fetched but not handed out yet are kept
+ * for the next call.
+ *
+ * The methods are synchronized, so the next page can be fetched ahead of time on one thread,
+ * with {@link #fill(long)}, while another waits to take it with
+ * {@link #next(long, NewsItemJsonParser.OnNewsItemParsedListener)}.
+ */
+public class NewsFeedCursor {
+
+    /**
+     * Fetches pages of results from the queries. This is only replaced in tests.
+     */
+    interface PageFetcher {
+        /**
+         * Fetches a page of each of the given queries at the same time.
+         * @see QueryUtils#fetchNewsPages(List, int[], int, String, long,
+         * NewsItemJsonParser.OnNewsItemParsedListener)
+         */
+        List<NewsPage> fetchNewsPages(List<GuardianQuery> queries, int[] pages, int pageSize,
+                                      long deadlineMillis,
+                                      NewsItemJsonParser.OnNewsItemParsedListener listener);
+    }
+
+    /** Fetches pages from the Guardian API. */
+    private static final PageFetcher API_FETCHER = new PageFetcher() {
+        @Override
+        public List<NewsPage> fetchNewsPages(List<GuardianQuery> queries, int[] pages,
+                                             int pageSize, long deadlineMillis,
+                                             NewsItemJsonParser.OnNewsItemParsedListener listener) {
+            return QueryUtils.fetchNewsPages(queries, pages, pageSize, null, deadlineMillis,
+                    listener);
+        }
+    };
+
+    /** The cursor into each query, in the same order as the queries. */
+    private final List<QueryCursor> cursors = new ArrayList<>();
+
+    /** The number of news items handed out at a time. */
+    private final int pageSize;
+
+    private final PageFetcher pageFetcher;
+
+    /** The number of pages handed out so far. */
+    private int pagesTaken;
+
+    /**
+     * Constructs a new {@link NewsFeedCursor}, which starts from the first page of every query.
+     * @param queries the queries that make up the news feed
+     * @param pageSize the number of results on each page of each query, which is also the number
+     *                 of news items handed out at a time
+     * @throws IllegalArgumentException if any of the queries isn't ordered newest first
+     */
+    public NewsFeedCursor(List<GuardianQuery> queries, int pageSize) {
+        this(queries, pageSize, API_FETCHER);
+    }
+
+    NewsFeedCursor(List<GuardianQuery> queries, int pageSize, PageFetcher pageFetcher) {
+        for (GuardianQuery query : queries) {
+            // The merge takes the newest of each query's next news items, which is only the
+            // newest left if each query's results are in that order too
+            if (!GuardianQuery.ORDER_BY_NEWEST.equals(query.getOrderBy())) {
+                throw new IllegalArgumentException(
+                        "Queries must be ordered newest first, not by " + query.getOrderBy());
+            }
+            cursors.add(new QueryCursor(query));
+        }
+        this.pageSize = pageSize;
+        this.pageFetcher = pageFetcher;
+    }
+
+    /**
+     * Moves every query's cursor to the start of the given page, dropping anything which has
+     * been fetched but not handed out. Used when the feed is replaced by news items which came
+     * from somewhere else, such as the store, and paging has to carry on after them.
+     * @param page the number of the page to fetch next from each query, starting from 1
+     */
+    public synchronized void reset(int page) {
+        for (QueryCursor cursor : cursors) {
+            cursor.pages.clear();
+            cursor.nextPage = page;
+            cursor.hasNextPage = true;
+        }
+        pagesTaken = 0;
+    }
+
+    /**
+     * Returns true if there are news items which haven't been handed out yet, or may be.
+     */
+    public synchronized boolean hasNext() {
+        for (QueryCursor cursor : cursors) {
+            if (!cursor.pages.isEmpty() || cursor.hasNextPage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands out the next page of the news feed, fetching whatever it needs to first.
+     * Background thread only.
+     * @param deadlineMillis when every request must be finished by, in ms since boot
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed, in the
+     *                 order each query returns them. With a single query, it's only told about
+     *                 the news items this call hands out, not the ones fetched along with them
+     *                 and kept for the next call. With more, which news items will be handed
+     *                 out can't be known until they've all been fetched, so it's told about
+     *                 every one. May be null.
+     * @return up to a page of news items, newest first. If a request failed, the page has its
+     * error, and holds whatever could be handed out before it was needed. What was fetched is
+     * kept, so calling this again carries on from where it got to.
+     */
+    public synchronized NewsPage next(long deadlineMillis,
+                                      NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        return merge(deadlineMillis, listener, true);
+    }
+
+    /**
+     * Fetches whatever the next call to
+     * {@link #next(long, NewsItemJsonParser.OnNewsItemParsedListener)} will need, without
+     * handing anything out, so that the next page is ready straight away. Background thread only.
+     * @param deadlineMillis when every request must be finished by, in ms since boot
+     * @return what went wrong, or {@link LoadError#NONE} if everything needed was fetched
+     */
+    public synchronized LoadError fill(long deadlineMillis) {
+        return merge(deadlineMillis, null, false).getError();
+    }
+
+    /**
+     * Drops the news items which have been fetched but not handed out, other than what's left of
+     * the page each query is part way through, so that they're fetched again when they're
+     * needed. Used to give up memory.
+     */
+    public synchronized void discardFetched() {
+        for (QueryCursor cursor : cursors) {
+            while (cursor.pages.size() > 1) {
+                cursor.pages.remove(cursor.pages.size() - 1);
+                cursor.nextPage--;
+                cursor.hasNextPage = true;
+            }
+        }
+    }
+
+    /**
+     * Merges the queries, newest first, until a page of news items has been merged or they run
+     * out, fetching the next page of a query whenever every news item fetched from it has been
+     * merged.
+     * @param take true to hand out the merged news items, so that they're not merged again, or
+     *             false to only fetch what's needed to merge them
+     */
+    private NewsPage merge(long deadlineMillis,
+                           NewsItemJsonParser.OnNewsItemParsedListener listener, boolean take) {
+        // Where each query has got to in its fetched pages, which is only saved if the merged
+        // news items are taken
+        int[] pageIndexes = new int[cursors.size()];
+        int[] positions = new int[cursors.size()];
+
+        List<NewsItem> merged = new ArrayList<>();
+        Set<String> mergedUrls = new HashSet<>();
+        LoadError error = LoadError.NONE;
+
+        while (merged.size() < pageSize) {
+            // A query that has run out of fetched news items could still have one newer than
+            // every other query's next one, so fetch its next page before going any further
+            List<QueryCursor> needed = new ArrayList<>();
+            for (int i = 0; i < cursors.size(); i++) {
+                QueryCursor cursor = cursors.get(i);
+                if (cursor.peek(pageIndexes[i], positions[i]) == null && cursor.hasNextPage) {
+                    needed.add(cursor);
+                }
+            }
+            if (!needed.isEmpty()) {
+                // A single query's news items are merged in the order they arrive, after the
+                // ones already merged, so only as many as there's room for left on the page
+                // will be handed out
+                NewsItemJsonParser.OnNewsItemParsedListener fetchListener =
+                        listener != null && cursors.size() == 1
+                                ? new LimitedListener(listener, pageSize - merged.size())
+                                : listener;
+                error = fetch(needed, deadlineMillis, fetchListener);
+                if (error != LoadError.NONE) {
+                    break;
+                }
+                continue;
+            }
+
+            // Take the newest of the news items each query has got to
+            int newest = -1;
+            NewsItem newestItem = null;
+            for (int i = 0; i < cursors.size(); i++) {
+                NewsItem newsItem = cursors.get(i).peek(pageIndexes[i], positions[i]);
+                if (newsItem != null && (newestItem == null
+                        || newsItem.getPublishedMillis() > newestItem.getPublishedMillis())) {
+                    newest = i;
+                    newestItem = newsItem;
+                }
+            }
+            if (newestItem == null) {
+                // Every query has run out
+                break;
+            }
+
+            positions[newest]++;
+            if (positions[newest] == cursors.get(newest).pages.get(pageIndexes[newest]).size()) {
+                pageIndexes[newest]++;
+                positions[newest] = 0;
+            }
+
+            // The same news item can be found by more than one query
+            if (mergedUrls.add(newestItem.getUrl())) {
+                merged.add(newestItem);
+            }
+        }
+
+        if (take) {
+            for (int i = 0; i < cursors.size(); i++) {
+                cursors.get(i).advance(pageIndexes[i], positions[i]);
+            }
+            if (!merged.isEmpty()) {
+                pagesTaken++;
+            }
+        }
+
+        int pages = hasNext() ? pagesTaken + 1 : pagesTaken;
+        return new NewsPage(merged, pagesTaken, pages, error);
+    }
+
+    /**
+     * Fetches the next page of each of the given queries at the same time, and adds them to
+     * what's been fetched from each.
+     * @return the error of the first query that couldn't fetch anything, or
+     * {@link LoadError#NONE} if they all did
+     */
+    private LoadError fetch(List<QueryCursor> needed, long deadlineMillis,
+                            NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        List<GuardianQuery> queries = new ArrayList<>();
+        int[] pages = new int[needed.size()];
+        for (int i = 0; i < needed.size(); i++) {
+            queries.add(needed.get(i).query);
+            pages[i] = needed.get(i).nextPage;
+        }
+
+        List<NewsPage> newsPages = pageFetcher.fetchNewsPages(queries, pages, pageSize,
+                deadlineMillis, listener);
+
+        LoadError error = LoadError.NONE;
+        for (int i = 0; i < needed.size(); i++) {
+            QueryCursor cursor = needed.get(i);
+            NewsPage newsPage = newsPages.get(i);
+
+            // A page served from the cache while the API is unavailable is still worth using,
+            // but if nothing came back the page has to be fetched again
+            if (newsPage.getNewsItems().isEmpty() && !newsPage.isSuccessful()) {
+                if (error == LoadError.NONE) {
+                    error = newsPage.getError();
+                }
+                continue;
+            }
+
+            List<NewsItem> newsItems = new ArrayList<>(newsPage.getNewsItems());
+            Collections.sort(newsItems, QueryUtils.NEWEST_FIRST);
+            if (!newsItems.isEmpty()) {
+                cursor.pages.add(newsItems);
+            }
+            cursor.nextPage++;
+            // An empty page means the query has run out, whatever it says about its pages
+            cursor.hasNextPage = newsPage.hasNextPage() && !newsItems.isEmpty();
+        }
+        return error;
+    }
+
+    /**
+     * Passes on only the first news items parsed, up to a limit. A retried request parses the
+     * same news items again, so they're counted by their URLs.
+     */
+    private static class LimitedListener implements NewsItemJsonParser.OnNewsItemParsedListener {
+
+        private final NewsItemJsonParser.OnNewsItemParsedListener listener;
+
+        private final int limit;
+
+        /** The URLs of the news items passed on so far. */
+        private final Set<String> passedUrls = new HashSet<>();
+
+        LimitedListener(NewsItemJsonParser.OnNewsItemParsedListener listener, int limit) {
+            this.listener = listener;
+            this.limit = limit;
+        }
+
+        @Override
+        public void onNewsItemParsed(NewsItem newsItem) {
+            synchronized (this) {
+                if (!passedUrls.contains(newsItem.getUrl())) {
+                    if (passedUrls.size() >= limit) {
+                        return;
+                    }
+                    passedUrls.add(newsItem.getUrl());
+                }
+            }
+            listener.onNewsItemParsed(newsItem);
+        }
+    }
+
+    /**
+     * Where paging through a single query has got to.
+     */
+    private static class QueryCursor {
+
+        final GuardianQuery query;
+
+        /**
+         * The pages fetched from the query which haven't been handed out yet, oldest page last.
+         * The first one may have had some of its news items handed out already, in which case
+         * only the rest are left. None of them are empty.
+         */
+        final List<List<NewsItem>> pages = new ArrayList<>();
+
+        /** The number of the page to fetch next, starting from 1. */
+        int nextPage = 1;
+
+        /** True if the query has more pages after the ones fetched so far. */
+        boolean hasNextPage = true;
+
+        QueryCursor(GuardianQuery query) {
+            this.query = query;
+        }
+
+        /**
+         * Returns the news item at the given position in the given fetched page, or null if
+         * every fetched news item comes before it.
+         */
+        NewsItem peek(int pageIndex, int position) {
+            return pageIndex < pages.size() ? pages.get(pageIndex).get(position) : null;
+        }
+
+        /**
+         * Drops the fetched news items before the given position in the given fetched page,
+         * because they've been handed out.
+         */
+        void advance(int pageIndex, int position) {
+            pages.subList(0, pageIndex).clear();
+            if (position > 0) {
+                List<NewsItem> page = pages.get(0);
+                pages.set(0, new ArrayList<>(page.subList(position, page.size())));
+            }
+        }
+    }
+}
@@ -1,39 +1,109 @@
 package com.example.android.guardiannews;
 
-import android.graphics.Bitmap;
+import java.util.List;
 
 /**
  * This class represents an individual news item.
+ *
+ * A feed can hold thousands of these, so they're kept compact: the section name and
+ * contributor, which are shared by many news items, and the text shown for them, come from the
+ * {@link StringPool}, and the publication date is held as a number rather than a String. The
+ * date shown for a news item is different for almost every one, so it's only formatted once the
+ * news item is going to be shown, by {@link #prepareForDisplay(List)}.
+ *
+ * Lists of news items are plain Lists. The loader holds at most
+ * {@link NewsItemLoader#MAX_RETAINED_PAGES} pages of them, and the rest of the feed's history
+ * is kept in the {@link NewsStore} rather than in memory.
  */
 public class NewsItem {
     /** The URL leading to the news item on the Guardian website. */
     private String url;
     /** The headline of the news item. */
     private String webTitle;
-    /** The {@link Bitmap} thumbnail for the news item. */
-    private Bitmap thumbnail;
+    /**
+     * The URL of the thumbnail image for the news item, or null if it doesn't have one. The image
+     * itself is only fetched when the news item is shown in the list.
+     */
+    private String thumbnailUrl;
     /** The section of the site that this news item belongs to. */
     private String sectionName;
-    /** The date when the news item was published on the web, as a String. */
-    private String time;
+    /** When the news item was published on the web, in ms since the epoch. */
+    private long publishedMillis;
+    /**
+     * The date when the news item was published, as it was given, if it isn't exactly the
+     * datetime String of {@link #publishedMillis}, e.g. because it couldn't be parsed. This is
+     * null for almost every news item.
+     */
+    private String rawTime;
     /** The name of the contributor. */
     private String contributor;
 
-    public NewsItem(String url, String webTitle, Bitmap thumbnail, String sectionName, String time, String contributor) {
+    // The text shown for the news item in the news feed. These are worked out on a background
+    // thread, so that binding a row doesn't do any formatting.
+    /**
+     * The publication date, in the format "Sat, 05 Aug 2015 at 07:24 PM", or null until it's
+     * first needed.
+     */
+    private volatile String formattedTime;
+    /** The section name, in upper case. */
+    private String displaySectionName;
+    /** The contributor's name with "by " in front, or an empty string if there isn't one. */
+    private String displayContributor;
+
+    /**
+     * Constructs a new {@link NewsItem}.
+     * @param url the URL of the news item on the Guardian website
+     * @param webTitle the headline
+     * @param thumbnailUrl the URL of the thumbnail image, or null if there isn't one
+     * @param sectionName the section of the site the news item belongs to
+     * @param time the date the news item was published, in the format "2015-08-05T19:24:32Z"
+     * @param contributor the name of the contributor, or an empty string if there isn't one
+     */
+    public NewsItem(String url, String webTitle, String thumbnailUrl, String sectionName, String time, String contributor) {
+        Long timestamp = NewsItemFormatter.parseTimestamp(time);
+        init(url, webTitle, thumbnailUrl, sectionName, timestamp == null ? 0 : timestamp,
+                contributor);
+
+        // Keep the date as it was given if it can't be recreated from the timestamp
+        if (timestamp == null || !NewsItemFormatter.formatTimestamp(timestamp).equals(time)) {
+            rawTime = time;
+        }
+    }
+
+    /**
+     * Constructs a new {@link NewsItem} published at the given point in time.
+     * @param publishedMillis when the news item was published, in ms since the epoch
+     * @see #NewsItem(String, String, String, String, String, String)
+     */
+    public NewsItem(String url, String webTitle, String thumbnailUrl, String sectionName,
+                    long publishedMillis, String contributor) {
+        init(url, webTitle, thumbnailUrl, sectionName, publishedMillis, contributor);
+    }
+
+    /**
+     * Sets every field, sharing the values which are repeated across news items.
+     */
+    private void init(String url, String webTitle, String thumbnailUrl, String sectionName,
+                      long publishedMillis, String contributor) {
         this.url = url;
         this.webTitle = webTitle;
-        this.thumbnail = thumbnail;
-        this.sectionName = sectionName;
-        this.time = time;
-        this.contributor = contributor;
+        this.thumbnailUrl = thumbnailUrl;
+        this.sectionName = StringPool.intern(sectionName);
+        this.publishedMillis = publishedMillis;
+        this.contributor = StringPool.intern(contributor);
+
+        this.displaySectionName =
+                StringPool.intern(NewsItemFormatter.formatSection(sectionName));
+        this.displayContributor =
+                StringPool.intern(NewsItemFormatter.formatContributor(contributor));
     }
 
     public String getUrl() {
         return url;
     }
 
-    public Bitmap getThumbnail() {
-        return thumbnail;
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
     }
 
     public String getWebTitle() {
@@ -44,11 +114,98 @@ public class NewsItem {
         return sectionName;
     }
 
+    /**
+     * Returns the date the news item was published, in the format "2015-08-05T19:24:32Z". This
+     * is built from the timestamp each time it's called, so it shouldn't be used for sorting.
+     */
     public String getTime() {
-        return time;
+        return rawTime != null ? rawTime : NewsItemFormatter.formatTimestamp(publishedMillis);
+    }
+
+    /**
+     * Returns when the news item was published, in ms since the epoch, or 0 if its date couldn't
+     * be parsed.
+     */
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    /**
+     * Returns the date the news item was published as it was given, or null if it's exactly the
+     * datetime String of {@link #getPublishedMillis()}, which it almost always is.
+     */
+    String getRawTime() {
+        return rawTime;
     }
 
     public String getContributor() {
         return contributor;
     }
+
+    /**
+     * Returns the date the news item was published, in the format
+     * "Sat, 05 Aug 2015 at 07:24 PM". It's formatted the first time it's asked for, which should
+     * be on a background thread, through {@link #prepareForDisplay(List)}.
+     */
+    public String getFormattedTime() {
+        String formatted = formattedTime;
+        if (formatted == null) {
+            formatted = rawTime != null
+                    ? NewsItemFormatter.formatDate(rawTime)
+                    : NewsItemFormatter.formatDate(publishedMillis);
+            formattedTime = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Formats the dates of the given news items, which are about to be shown, so that binding
+     * their rows doesn't have to. Background thread only.
+     * @param newsItems the news items about to be shown
+     * @return the same news items
+     */
+    public static List<NewsItem> prepareForDisplay(List<NewsItem> newsItems) {
+        for (NewsItem newsItem : newsItems) {
+            newsItem.getFormattedTime();
+        }
+        return newsItems;
+    }
+
+    public String getDisplaySectionName() {
+        return displaySectionName;
+    }
+
+    public String getDisplayContributor() {
+        return displayContributor;
+    }
+
+    /**
+     * Two NewsItems are equal if all of their values are the same, so that a row showing one
+     * doesn't need to be redrawn to show the other.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NewsItem)) {
+            return false;
+        }
+
+        NewsItem other = (NewsItem) o;
+        return url.equals(other.url)
+                && webTitle.equals(other.webTitle)
+                && (thumbnailUrl == null
+                        ? other.thumbnailUrl == null
+                        : thumbnailUrl.equals(other.thumbnailUrl))
+                && sectionName.equals(other.sectionName)
+                && publishedMillis == other.publishedMillis
+                && (rawTime == null ? other.rawTime == null : rawTime.equals(other.rawTime))
+                && contributor.equals(other.contributor);
+    }
+
+    @Override
+    public int hashCode() {
+        return url.hashCode();
+    }
 }
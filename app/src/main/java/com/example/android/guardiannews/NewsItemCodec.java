@@ -0,0 +1,225 @@
+package com.example.android.guardiannews;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes lists of {@link NewsItem}s into a compact binary form, and decodes them again, so that
+ * the news feed can be saved in an instance state Bundle or a file and restored without going
+ * to the network or the database.
+ *
+ * The encoding is:
+ * <ul>
+ *     <li>a header of a magic number and a version</li>
+ *     <li>a table of the distinct section names and contributors, each written once, since
+ *     the same few turn up again and again</li>
+ *     <li>each news item, with its section name and contributor as indexes into the table,
+ *     and its publication date as ms since the epoch rather than an ISO 8601 String</li>
+ * </ul>
+ * Only the thumbnail's URL is stored, not the image.
+ */
+public class NewsItemCodec {
+
+    /** "GNwS", so that something which isn't an encoded list is rejected straight away. */
+    private static final int MAGIC = 0x474e7753;
+
+    /** The version of the encoding. Anything encoded with another version is rejected. */
+    private static final int VERSION = 1;
+
+    /** Set if the news item has a thumbnail URL, which follows. */
+    private static final int FLAG_HAS_THUMBNAIL = 1;
+
+    /**
+     * Set if the publication date couldn't be turned into ms and back without changing, in
+     * which case it's stored as the original String instead.
+     */
+    private static final int FLAG_RAW_TIME = 2;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsItemCodec}
+     * object. This class is only meant to hold static methods.
+     */
+    private NewsItemCodec() {
+    }
+
+    /**
+     * Encodes a list of {@link NewsItem}s.
+     * @param newsItems the news items to encode
+     * @return the encoded news items
+     */
+    public static byte[] encode(List<NewsItem> newsItems) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            encode(newsItems, output);
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes a list of {@link NewsItem}s onto the given stream, which isn't closed.
+     */
+    public static void encode(List<NewsItem> newsItems, OutputStream outputStream)
+            throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+
+        // Gather the distinct section names and contributors, numbering them in the order
+        // they're first seen
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (NewsItem newsItem : newsItems) {
+            addString(newsItem.getSectionName(), stringIndexes, strings);
+            addString(orEmpty(newsItem.getContributor()), stringIndexes, strings);
+        }
+
+        writeVarInt(output, strings.size());
+        for (String string : strings) {
+            output.writeUTF(string);
+        }
+
+        writeVarInt(output, newsItems.size());
+        for (NewsItem newsItem : newsItems) {
+            // The news item already knows whether its date can be stored as a timestamp, so
+            // there's no date to format or parse here
+            String rawTime = newsItem.getRawTime();
+
+            int flags = 0;
+            if (newsItem.getThumbnailUrl() != null) {
+                flags |= FLAG_HAS_THUMBNAIL;
+            }
+            if (rawTime != null) {
+                flags |= FLAG_RAW_TIME;
+            }
+            output.writeByte(flags);
+
+            output.writeUTF(newsItem.getUrl());
+            output.writeUTF(newsItem.getWebTitle());
+            if (newsItem.getThumbnailUrl() != null) {
+                output.writeUTF(newsItem.getThumbnailUrl());
+            }
+            writeVarInt(output, stringIndexes.get(newsItem.getSectionName()));
+            writeVarInt(output, stringIndexes.get(orEmpty(newsItem.getContributor())));
+            if (rawTime != null) {
+                output.writeUTF(rawTime);
+            } else {
+                output.writeLong(newsItem.getPublishedMillis());
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Decodes a list of {@link NewsItem}s encoded by {@link #encode(List)}.
+     * @param bytes the encoded news items
+     * @return the news items, in the order they were encoded
+     * @throws IOException if the bytes aren't a list of news items in this version's encoding
+     */
+    public static List<NewsItem> decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Decodes a list of {@link NewsItem}s encoded by {@link #encode(List, OutputStream)} from
+     * the given stream, which isn't closed.
+     */
+    public static List<NewsItem> decode(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+            throw new IOException("Not an encoded list of news items, or the wrong version");
+        }
+
+        int stringCount = readVarInt(input);
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = input.readUTF();
+        }
+
+        int newsItemCount = readVarInt(input);
+        List<NewsItem> newsItems = new ArrayList<>(newsItemCount);
+        for (int i = 0; i < newsItemCount; i++) {
+            int flags = input.readByte();
+            String url = input.readUTF();
+            String webTitle = input.readUTF();
+            String thumbnailUrl = (flags & FLAG_HAS_THUMBNAIL) != 0 ? input.readUTF() : null;
+            String sectionName = getString(strings, readVarInt(input));
+            String contributor = getString(strings, readVarInt(input));
+            if ((flags & FLAG_RAW_TIME) != 0) {
+                newsItems.add(new NewsItem(url, webTitle, thumbnailUrl, sectionName,
+                        input.readUTF(), contributor));
+            } else {
+                newsItems.add(new NewsItem(url, webTitle, thumbnailUrl, sectionName,
+                        input.readLong(), contributor));
+            }
+        }
+        return newsItems;
+    }
+
+    /**
+     * Adds a string to the table if it isn't already there.
+     */
+    private static void addString(String string, Map<String, Integer> stringIndexes,
+                                  List<String> strings) {
+        if (!stringIndexes.containsKey(string)) {
+            stringIndexes.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    /**
+     * Returns the string, or an empty string if it's null. A news item with no contributor is
+     * stored as having an empty one, which is shown the same way.
+     */
+    private static String orEmpty(String string) {
+        return string == null ? "" : string;
+    }
+
+    /**
+     * Looks up a string in the table, checking the index is in range.
+     */
+    private static String getString(String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("String index out of range: " + index);
+        }
+        return strings[index];
+    }
+
+    /**
+     * Writes a non-negative int in as few bytes as it needs, 7 bits at a time, so that small
+     * numbers like counts and table indexes usually take a single byte.
+     */
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            output.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Reads an int written by {@link #writeVarInt}.
+     */
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length int");
+    }
+}
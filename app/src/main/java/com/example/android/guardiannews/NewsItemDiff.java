@@ -0,0 +1,132 @@
+package com.example.android.guardiannews;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link NewsItemDiff} works out what changed between the news items being shown and a
+ * freshly loaded list of them, matching news items up by their web URL. Each fresh news item
+ * is either:
+ * <ul>
+ *     <li>inserted, if no news item with its URL is being shown</li>
+ *     <li>updated, if one is, but some of its values have changed</li>
+ *     <li>unchanged, in which case the {@link NewsItem} being shown is kept in its place</li>
+ * </ul>
+ * and any news item being shown whose URL isn't in the fresh list has been removed.
+ *
+ * Keeping the same {@link NewsItem} objects for the unchanged news items means the rows
+ * showing them can tell straight away that there's nothing to rebind.
+ */
+public class NewsItemDiff {
+
+    /** The fresh news items, in their order, with the unchanged ones replaced by the old ones. */
+    private final List<NewsItem> merged;
+
+    private final int inserted;
+    private final int updated;
+    private final int unchanged;
+    private final int removed;
+
+    /** True if anything at all is different, including the order of the news items. */
+    private final boolean changed;
+
+    private NewsItemDiff(List<NewsItem> merged, int inserted, int updated, int unchanged,
+                         int removed, boolean changed) {
+        this.merged = merged;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    /**
+     * Works out what changed between two lists of news items.
+     * @param current the news items being shown, may be null for none
+     * @param fresh the news items which should be shown instead, may be null for none
+     * @return the changes, and the list to show
+     */
+    public static NewsItemDiff compute(List<NewsItem> current, List<NewsItem> fresh) {
+        int currentCount = current == null ? 0 : current.size();
+        int freshCount = fresh == null ? 0 : fresh.size();
+
+        Map<String, NewsItem> currentByUrl = new HashMap<>(currentCount * 2);
+        for (int i = 0; i < currentCount; i++) {
+            NewsItem newsItem = current.get(i);
+            currentByUrl.put(newsItem.getUrl(), newsItem);
+        }
+
+        List<NewsItem> merged = new ArrayList<>(freshCount);
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        for (int i = 0; i < freshCount; i++) {
+            NewsItem newsItem = fresh.get(i);
+            NewsItem old = currentByUrl.remove(newsItem.getUrl());
+            if (old == null) {
+                inserted++;
+                merged.add(newsItem);
+            } else if (old.equals(newsItem)) {
+                unchanged++;
+                merged.add(old);
+            } else {
+                updated++;
+                merged.add(newsItem);
+            }
+        }
+        // Whatever wasn't matched by a fresh news item is no longer in the list
+        int removed = currentByUrl.size();
+
+        boolean changed = inserted > 0 || updated > 0 || removed > 0;
+        if (!changed) {
+            // The same news items, but they may have moved
+            for (int i = 0; i < freshCount; i++) {
+                if (merged.get(i) != current.get(i)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        return new NewsItemDiff(merged, inserted, updated, unchanged, removed, changed);
+    }
+
+    /**
+     * Returns the news items to show, in order. Unchanged news items are the objects which were
+     * already being shown.
+     */
+    public List<NewsItem> getMergedNewsItems() {
+        return merged;
+    }
+
+    /**
+     * Returns true if the merged list is different in any way from the one being shown.
+     */
+    public boolean hasChanges() {
+        return changed;
+    }
+
+    public int getInsertedCount() {
+        return inserted;
+    }
+
+    public int getUpdatedCount() {
+        return updated;
+    }
+
+    public int getUnchangedCount() {
+        return unchanged;
+    }
+
+    public int getRemovedCount() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "inserted=" + inserted + " updated=" + updated + " unchanged=" + unchanged
+                + " removed=" + removed;
+    }
+}
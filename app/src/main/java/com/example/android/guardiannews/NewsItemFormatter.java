@@ -0,0 +1,152 @@
+package com.example.android.guardiannews;
+
+import android.util.Log;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Turns the raw values of a {@link NewsItem} into the text shown for it in the news feed. This is
+ * done once, on a background thread, when the {@link NewsItem} is created or about to be shown,
+ * so that binding a row of the list doesn't have to parse or format anything.
+ */
+public class NewsItemFormatter {
+
+    private static final String LOG_TAG = NewsItemFormatter.class.getName();
+
+    // When displaying the results, append "by" to the start of any NewsItem that has a contributor
+    // name that is not empty or null
+    private static final String BY_ = "by ";
+
+    /**
+     * The expected format of the datetime String that needs to be parsed, which is something
+     * like 2015-08-05T19:24:32Z. {@link SimpleDateFormat} isn't thread safe and is expensive to
+     * create, so each thread keeps its own.
+     */
+    private static final ThreadLocal<SimpleDateFormat> EXPECTED_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+                }
+            };
+
+    /**
+     * The same format as above, but read as UTC, which is what the "Z" at the end means, so that
+     * datetimes can be turned into points in time and back again.
+     */
+    private static final ThreadLocal<SimpleDateFormat> TIMESTAMP_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    return format;
+                }
+            };
+
+    /**
+     * The format of the String that we want as output, which is something like
+     * Sun, 20 Aug 2016 at 05:00 PM. Each thread keeps its own, for the same reason as above.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DESIRED_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("EEE, d MMM yyyy 'at' hh:mm aaa");
+                }
+            };
+
+    /**
+     * The same format as above, but for points in time, so it's in UTC like the datetimes it
+     * shows. This gives the same text as formatting the datetime String.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DESIRED_TIMESTAMP_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat format = new SimpleDateFormat("EEE, d MMM yyyy 'at' hh:mm aaa");
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    return format;
+                }
+            };
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsItemFormatter}
+     * object. This class is only meant to hold static methods.
+     */
+    private NewsItemFormatter() {
+    }
+
+    /**
+     * Converts a String representing a datetime in the format "2015-08-05T19:24:32Z" to a String
+     * representing the date and time in the format "Sat, 05 Aug 2015 at 07:24 PM"
+     * @param datetime a String in the format "2015-08-05T19:24:32Z"
+     * @return a String in the format "Sat, 05 Aug 2015 at 07:24 PM", or an empty string if the
+     * datetime couldn't be parsed
+     */
+    public static String formatDate(String datetime) {
+        // The datetime to be returned after formatting
+        String formattedDateTime = "";
+
+        try {
+            Date dateAndTime = EXPECTED_FORMAT.get().parse(datetime);
+            formattedDateTime = DESIRED_FORMAT.get().format(dateAndTime);
+        } catch (ParseException e) {
+            Log.e(LOG_TAG, "Problem parsing date and time", e);
+        }
+
+        return formattedDateTime;
+    }
+
+    /**
+     * Converts a time in ms since the epoch to a String representing the date and time in the
+     * format "Sat, 05 Aug 2015 at 07:24 PM", the same as {@link #formatDate(String)} does for
+     * the datetime String of that time.
+     */
+    public static String formatDate(long millis) {
+        return DESIRED_TIMESTAMP_FORMAT.get().format(new Date(millis));
+    }
+
+    /**
+     * Converts a String representing a datetime in the format "2015-08-05T19:24:32Z" to the
+     * number of ms since the epoch.
+     * @param datetime a String in the format "2015-08-05T19:24:32Z"
+     * @return the time in ms since the epoch, or null if the datetime couldn't be parsed
+     */
+    public static Long parseTimestamp(String datetime) {
+        try {
+            return TIMESTAMP_FORMAT.get().parse(datetime).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a time in ms since the epoch to a String in the format "2015-08-05T19:24:32Z",
+     * the reverse of {@link #parseTimestamp(String)}.
+     */
+    public static String formatTimestamp(long millis) {
+        return TIMESTAMP_FORMAT.get().format(new Date(millis));
+    }
+
+    /**
+     * Returns the section name as it's shown in the news feed, in upper case.
+     */
+    public static String formatSection(String sectionName) {
+        return sectionName.toUpperCase();
+    }
+
+    /**
+     * Returns the contributor's name with "by " stuck at the start, or an empty string if there
+     * is no contributor.
+     */
+    public static String formatContributor(String contributor) {
+        if (contributor == null || contributor.isEmpty()) {
+            return "";
+        }
+        return BY_ + contributor;
+    }
+}
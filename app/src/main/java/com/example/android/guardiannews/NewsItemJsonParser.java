@@ -0,0 +1,203 @@
+package com.example.android.guardiannews;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link NewsItemJsonParser} reads {@link NewsItem}s straight off the stream of a Guardian
+ * search response, one token at a time, so that the whole response never has to be held in
+ * memory as a String or a tree of JSONObjects. Each {@link NewsItem} is handed to a listener as
+ * soon as its result has been read, while the rest of the response is still downloading.
+ */
+public class NewsItemJsonParser {
+
+    /**
+     * Callback used to hand over each {@link NewsItem} as soon as it has been parsed.
+     */
+    public interface OnNewsItemParsedListener {
+        void onNewsItemParsed(NewsItem newsItem);
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link NewsItemJsonParser} object. This class is only meant to hold static methods.
+     */
+    private NewsItemJsonParser() {
+    }
+
+    /**
+     * Parses a Guardian search response from the given {@link InputStream}. The stream isn't
+     * closed.
+     * @param inputStream the stream of the response body
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed, may be null
+     * @return the page of results in the response, holding every {@link NewsItem} in order
+     * @throws MalformedJsonException if the stream isn't a valid response
+     * @throws IOException if the stream couldn't be read
+     */
+    public static NewsPage parse(InputStream inputStream, OnNewsItemParsedListener listener)
+            throws IOException {
+        List<NewsItem> newsItems = new ArrayList<>();
+        // If the response doesn't say otherwise, assume it's the one and only page
+        int[] pageInfo = {1, 1};
+
+        JsonReader reader =
+                new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            // The root object has a single "response" object, which holds the "results" array
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("response")) {
+                    readResponse(reader, newsItems, pageInfo, listener);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader throws these when the JSON doesn't have the structure we expect, such
+            // as a "currentPage" of 1.5 or one too big for an int. Report it the same way as JSON
+            // that isn't valid at all, so it isn't mistaken for a network problem
+            throw new MalformedJsonException("Unexpected JSON structure: " + e.getMessage());
+        }
+
+        return new NewsPage(newsItems, pageInfo[0], pageInfo[1]);
+    }
+
+    /**
+     * Reads the "response" object, adding each of its results to the list of news items and
+     * filling in pageInfo with its "currentPage" and "pages" values.
+     */
+    private static void readResponse(JsonReader reader, List<NewsItem> newsItems, int[] pageInfo,
+                                     OnNewsItemParsedListener listener) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("currentPage") && reader.peek() == JsonToken.NUMBER) {
+                pageInfo[0] = reader.nextInt();
+            } else if (name.equals("pages") && reader.peek() == JsonToken.NUMBER) {
+                pageInfo[1] = reader.nextInt();
+            } else if (name.equals("results")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    NewsItem newsItem = readResult(reader);
+                    newsItems.add(newsItem);
+                    if (listener != null) {
+                        listener.onNewsItemParsed(newsItem);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a single element of the results array into a {@link NewsItem}. Missing fields are
+     * treated the same way as {@link QueryUtils} does for the JSONObject version of a result.
+     */
+    private static NewsItem readResult(JsonReader reader) throws IOException {
+        String sectionName = "";
+        String webPublicationDate = "";
+        String webTitle = "";
+        String webUrl = "";
+        String thumbnailUrl = null;
+        String contributor = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "sectionName":
+                    sectionName = reader.nextString();
+                    break;
+                case "webPublicationDate":
+                    webPublicationDate = reader.nextString();
+                    break;
+                case "webTitle":
+                    webTitle = reader.nextString();
+                    break;
+                case "webUrl":
+                    webUrl = reader.nextString();
+                    break;
+                case "fields":
+                    thumbnailUrl = readThumbnailUrl(reader);
+                    break;
+                case "tags":
+                    contributor = readContributor(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return new NewsItem(webUrl, webTitle, thumbnailUrl, sectionName, webPublicationDate,
+                contributor);
+    }
+
+    /**
+     * Reads the "fields" object of a result, returning its "thumbnail" string or null if there
+     * isn't one.
+     */
+    private static String readThumbnailUrl(JsonReader reader) throws IOException {
+        String thumbnailUrl = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("thumbnail") && reader.peek() == JsonToken.STRING) {
+                thumbnailUrl = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return thumbnailUrl;
+    }
+
+    /**
+     * Reads the "tags" array of a result, returning the "webTitle" of its first element, which
+     * should be the contributor, or an empty string if there isn't one.
+     */
+    private static String readContributor(JsonReader reader) throws IOException {
+        String contributor = "";
+
+        reader.beginArray();
+        boolean first = true;
+        while (reader.hasNext()) {
+            if (first && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("webTitle") && reader.peek() == JsonToken.STRING) {
+                        contributor = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+            first = false;
+        }
+        reader.endArray();
+
+        return contributor;
+    }
+}
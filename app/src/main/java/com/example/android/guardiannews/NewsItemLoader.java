@@ -1,34 +1,607 @@
 package com.example.android.guardiannews;
 
 import android.content.AsyncTaskLoader;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by MHye on 24/10/2016.
+ *
+ * Loads the news feed, offline first. The feed is made up of one or more queries, which are
+ * fetched at the same time and merged, newest first. When the loader starts it delivers the news items held in
+ * the {@link NewsStore} straight away, and then refreshes the store by fetching only the news
+ * items published since the newest stored one. {@link #loadNextPage()} appends the next page of
+ * older news items as the user scrolls, merged across the queries by a {@link NewsFeedCursor}.
+ *
+ * As soon as a page has been loaded, the page after it is fetched in the background, so that it's
+ * usually ready by the time the user scrolls to the end of the list. Only the most recent
+ * {@link #MAX_RETAINED_PAGES} pages' worth of news items are kept.
+ *
+ * The loaded news items are kept across configuration changes and trips into the background.
+ * When the loader is started again they're delivered straight away, and only refreshed if
+ * they're older than the loader's time to live.
+ *
+ * While news items are being fetched to add to the end of the list, or to fill an empty feed,
+ * each one is handed to the {@link OnBatchLoadedListener} as soon as it has been parsed, in
+ * batches, so the user sees them long before the whole load is finished. The delivered result
+ * then replaces them, merged and in order. When more than one query is appended to, the news
+ * items are only handed out once they've been merged, since they arrive out of order.
+ *
+ * Whatever is delivered is also written to a {@link NewsSnapshot}, which is what the first load
+ * after the app starts reads, so the feed comes back as it was left with a single read. If the
+ * activity saved the news items it was showing, the first load restores those instead, so that
+ * they're decoded and formatted here rather than on the main thread.
  */
 
 public class NewsItemLoader extends AsyncTaskLoader<List<NewsItem>> {
 
     private static final String LOG_TAG = NewsItemLoader.class.getName();
 
-    public NewsItemLoader(Context context) {
+    /** The maximum number of pages held at once. The earliest loaded are dropped after this. */
+    public static final int MAX_RETAINED_PAGES = 10;
+
+    /** How long loaded news items are used for before they're refreshed, by default, in ms. */
+    public static final long DEFAULT_RESULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * The longest a single load may spend fetching from the network, in ms, including retries.
+     * After this the user is shown whatever is stored, rather than being kept waiting.
+     */
+    public static final long LOAD_BUDGET_MILLIS = 20 * 1000;
+
+    /** The name of the file in the app's cache directory that the snapshot is kept in. */
+    private static final String SNAPSHOT_FILE = "newsfeed.snapshot";
+
+    /**
+     * Callback used to hand news items to the UI while they're still being loaded.
+     */
+    public interface OnBatchLoadedListener {
+        /**
+         * Called on the main thread with news items which have just been fetched, and which
+         * belong at the end of the news items delivered so far. Only news items which haven't
+         * been delivered or handed over in an earlier batch are included.
+         */
+        void onBatchLoaded(List<NewsItem> batch);
+    }
+
+    /** Deliver whatever is in the {@link NewsStore}, without touching the network. */
+    private static final int MODE_LOAD_STORED = 0;
+
+    /** Fetch the news items published since the newest stored one, then deliver the store. */
+    private static final int MODE_REFRESH = 1;
+
+    /** Fetch the page after the last loaded one and add it to the end of the list. */
+    private static final int MODE_APPEND = 2;
+
+    /** The queries that make up the news feed, which are run at the same time and merged. */
+    private final List<GuardianQuery> queries;
+
+    /** The number of results on each page of each query. */
+    private final int pageSize;
+
+    /** How long loaded news items are used for before they're refreshed, in ms. */
+    private final long resultTtlMillis;
+
+    /** Where news items are kept between launches of the app. */
+    private final NewsStore newsStore;
+
+    /** The news feed as it was last delivered, to restore it from when the app starts. */
+    private final NewsSnapshot snapshot;
+
+    /** Fetches the page after the last loaded one, ahead of it being needed. */
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    /** Where appending has got to in each of the queries. */
+    private final NewsFeedCursor feedCursor;
+
+    /** The news items which have been loaded. Only replaced by loadInBackground(). */
+    private volatile List<NewsItem> newsItems;
+
+    /** True if there are more pages after the last loaded one. */
+    private volatile boolean hasNextPage = true;
+
+    /** When the store was last refreshed, in ms since boot, or -1 if it hasn't been. */
+    private volatile long lastRefreshMillis = -1;
+
+    /** What went wrong with the most recent load, if anything. */
+    private volatile LoadError lastError = LoadError.NONE;
+
+    /**
+     * The news items the activity saved, encoded by {@link NewsItemCodec}, for the first load to
+     * restore, or null if there aren't any or they've been restored.
+     */
+    private volatile byte[] savedNewsItems;
+
+    /** The fetch of the next page ahead of time, or null if there isn't one. */
+    private Future<LoadError> prefetchedPage;
+
+    /** What the next load should do, one of the MODE constants. */
+    private volatile int pendingMode = MODE_LOAD_STORED;
+
+    /** What the most recently finished load did, one of the MODE constants. */
+    private volatile int lastMode = MODE_LOAD_STORED;
+
+    /** True while a load is in progress, or about to be. Main thread only. */
+    private boolean loading;
+
+    /** Used to post batches of news items to the main thread. */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Told about news items while they're being loaded. May be null. Main thread only. */
+    private OnBatchLoadedListener batchListener;
+
+    /** Told when the system is running low on memory, for as long as the loader is around. */
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    public NewsItemLoader(Context context, List<GuardianQuery> queries) {
+        this(context, queries, QueryUtils.DEFAULT_PAGE_SIZE, DEFAULT_RESULT_TTL_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link NewsItemLoader}.
+     * @param context the {@link Context} of the app
+     * @param queries the queries that make up the news feed
+     * @param pageSize the number of results on each page of each query
+     * @param resultTtlMillis how long loaded news items are used for before the loader refreshes
+     *                        them when it's started, in ms
+     */
+    public NewsItemLoader(Context context, List<GuardianQuery> queries, int pageSize,
+                          long resultTtlMillis) {
         super(context);
+        this.queries = new ArrayList<>(queries);
+        this.pageSize = pageSize;
+        this.resultTtlMillis = resultTtlMillis;
+        feedCursor = new NewsFeedCursor(this.queries, pageSize);
+        newsStore = new NewsStore(context);
+        snapshot = new NewsSnapshot(new File(context.getCacheDir(), SNAPSHOT_FILE));
+        getContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    /**
+     * Starts loading the page after the last loaded one, unless a load is already in progress
+     * or there are no more pages. Must be called on the main thread.
+     */
+    public void loadNextPage() {
+        if (loading || !hasNextPage || !isStarted()) {
+            return;
+        }
+
+        pendingMode = MODE_APPEND;
+        forceLoad();
+    }
+
+    /**
+     * Has the first load deliver the given news items, which the activity saved before its
+     * process was killed, rather than reading the snapshot. Must be called before the loader is
+     * started.
+     * @param encoded the news items, encoded by {@link NewsItemCodec}, or null if none were saved
+     */
+    public void setSavedNewsItems(byte[] encoded) {
+        savedNewsItems = encoded;
+    }
+
+    /**
+     * Sets the listener that news items are handed to in batches while they're being loaded.
+     * Must be called on the main thread.
+     * @param listener the listener, or null to stop handing them over
+     */
+    public void setOnBatchLoadedListener(OnBatchLoadedListener listener) {
+        batchListener = listener;
+    }
+
+    /**
+     * Returns true if the loader is still fetching news items, for example if the stored news
+     * items have been delivered but the refresh from the network hasn't finished yet.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Returns what went wrong with the most recent load, or {@link LoadError#NONE} if nothing
+     * did. The news items it delivered are whatever could be loaded despite the error, which
+     * are usually the stored ones.
+     */
+    public LoadError getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Gives up memory when the system is running low on it, by dropping the pages fetched ahead
+     * of time, since they can be fetched again when they're needed. The loaded news items are
+     * kept, since the activity's list shows the same ones and would keep them alive anyway.
+     * Called on the main thread.
+     * @param level one of the TRIM_MEMORY levels in {@link ComponentCallbacks2}
+     */
+    private void trimMemory(int level) {
+        // A load in progress is using what's loaded, and will deliver it when it's done
+        if (loading) {
+            return;
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            discardPrefetchedPage();
+            // The cursor may be busy fetching, so let go of what it has fetched on the
+            // prefetch thread rather than waiting for it here
+            try {
+                prefetchExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        feedCursor.discardFetched();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The loader has been reset, so there's nothing left to give up
+            }
+        }
     }
 
     @Override
     protected void onStartLoading() {
-        Log.v(LOG_TAG, "onStartLoading()");
-        forceLoad();
+        if (BuildConfig.DEBUG) {
+            Log.v(LOG_TAG, "onStartLoading()");
+        }
+
+        // A load that's still running will deliver its result when it's done, so starting
+        // another would only repeat its work
+        if (loading) {
+            return;
+        }
+
+        // Show the stored news items first if nothing has been loaded yet
+        if (newsItems == null) {
+            pendingMode = MODE_LOAD_STORED;
+            forceLoad();
+            return;
+        }
+
+        // Otherwise hand back what's already loaded straight away, without chaining a refresh
+        // onto it, and only refresh if it's out of date
+        super.deliverResult(newsItems);
+        if (takeContentChanged() || isStale()) {
+            pendingMode = MODE_REFRESH;
+            forceLoad();
+        }
+    }
+
+    /**
+     * Returns true if the store hasn't been refreshed within the time to live.
+     */
+    private boolean isStale() {
+        return lastRefreshMillis < 0
+                || SystemClock.elapsedRealtime() - lastRefreshMillis > resultTtlMillis;
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        loading = true;
     }
 
     @Override
     public List<NewsItem> loadInBackground() {
-        // Get the list of news items to display
-        return QueryUtils.fetchNewsItems();
+        // Format whatever is about to be shown while still off the main thread
+        return NewsItem.prepareForDisplay(load());
+    }
+
+    /**
+     * Does whatever the pending mode says to, and returns the news items to deliver.
+     */
+    private List<NewsItem> load() {
+        int mode = pendingMode;
+        lastMode = mode;
+
+        switch (mode) {
+            case MODE_APPEND:
+                return saveSnapshot(appendNextPage());
+            case MODE_REFRESH:
+                // If there's nothing to show yet, show the news items as they arrive. Otherwise
+                // the few new ones at the top aren't worth showing out of order.
+                BatchPublisher publisher = newsItems == null || newsItems.isEmpty()
+                        ? new BatchPublisher(newsItems) : null;
+                lastError = NewsSync.refresh(newsStore, queries, pageSize, LOAD_BUDGET_MILLIS,
+                        publisher);
+                if (publisher != null) {
+                    publisher.finish();
+                }
+                if (lastError == LoadError.NONE) {
+                    lastRefreshMillis = SystemClock.elapsedRealtime();
+                }
+                // Deliver the refreshed store, or what was already stored if the refresh failed
+                return saveSnapshot(loadStored());
+            default:
+                lastError = LoadError.NONE;
+                return loadSnapshot();
+        }
+    }
+
+    @Override
+    public void deliverResult(List<NewsItem> data) {
+        // Once the stored news items are showing, refresh them from the network
+        boolean refreshNext = lastMode == MODE_LOAD_STORED && isStarted();
+        loading = refreshNext;
+
+        super.deliverResult(data);
+
+        if (refreshNext) {
+            pendingMode = MODE_REFRESH;
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onCanceled(List<NewsItem> data) {
+        super.onCanceled(data);
+        loading = false;
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        // A load that's still running finishes in the background, and may try to prefetch the
+        // page after it once the executor has been shut down, which prefetchPage() allows for
+        cancelLoad();
+        prefetchExecutor.shutdownNow();
+        getContext().unregisterComponentCallbacks(memoryCallbacks);
+    }
+
+    /**
+     * Reads the news items in the snapshot, replacing whatever has been loaded so far. If the
+     * activity saved the news items it was showing, those are used instead, and if there isn't
+     * a snapshot either, e.g. the first time the app is run, they're read from the store.
+     */
+    private List<NewsItem> loadSnapshot() {
+        byte[] saved = savedNewsItems;
+        savedNewsItems = null;
+        if (saved != null) {
+            try {
+                return setLoaded(NewsItemCodec.decode(saved));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem restoring saved news items, loadSnapshot", e);
+            }
+        }
+
+        List<NewsItem> restored = snapshot.read();
+        return restored != null ? setLoaded(restored) : loadStored();
+    }
+
+    /**
+     * Writes the given news items to the snapshot, and returns them.
+     */
+    private List<NewsItem> saveSnapshot(List<NewsItem> newsItems) {
+        snapshot.write(newsItems);
+        return newsItems;
+    }
+
+    /**
+     * Reads the newest news items from the store, replacing whatever has been loaded so far.
+     */
+    private List<NewsItem> loadStored() {
+        return setLoaded(newsStore.getNewestNewsItems(pageSize * MAX_RETAINED_PAGES));
+    }
+
+    /**
+     * Replaces whatever has been loaded so far with the given news items, which are the newest
+     * ones, in newest first order.
+     */
+    private List<NewsItem> setLoaded(List<NewsItem> stored) {
+        // Anything fetched ahead of time was for the old list, so it may be the wrong page
+        discardPrefetchedPage();
+
+        // Appending carries on from about the page after the stored news items, assuming each
+        // query found an even share of them. Wherever that overlaps with what's stored, the
+        // duplicates are left out when they're appended.
+        feedCursor.reset(stored.size() / (pageSize * Math.max(queries.size(), 1)) + 1);
+        hasNextPage = true;
+        newsItems = stored;
+
+        return stored;
     }
 
+    /**
+     * Fetches the page after the last loaded one, stores it, and adds any of its news items
+     * which aren't already loaded to the end of the list.
+     */
+    private List<NewsItem> appendNextPage() {
+        // If the next page was fetched ahead of time, the cursor already has it, and if it's
+        // still being fetched the cursor waits for it. Only hand over the news items as they
+        // arrive when there's a single query, since they're in feed order.
+        prefetchedPage = null;
+        List<NewsItem> current = newsItems == null ? new ArrayList<NewsItem>() : newsItems;
+        BatchPublisher publisher = queries.size() == 1 ? new BatchPublisher(current) : null;
+        NewsPage newsPage = feedCursor.next(SystemClock.elapsedRealtime() + LOAD_BUDGET_MILLIS,
+                publisher);
+        if (publisher != null) {
+            publisher.finish();
+        }
+        lastError = newsPage.getError();
 
+        // If nothing could be fetched, leave everything as it was so the cursor tries again the
+        // next time the user scrolls to the end
+        if (newsPage.getNewsItems().isEmpty()) {
+            hasNextPage = feedCursor.hasNext();
+            return current;
+        }
+        newsStore.upsertNewsItems(newsPage.getNewsItems());
+
+        // The page may overlap with what's already loaded, if news items were published since
+        // the loaded ones were fetched, so leave out any duplicates
+        Set<String> loadedUrls = new HashSet<>();
+        for (NewsItem newsItem : current) {
+            loadedUrls.add(newsItem.getUrl());
+        }
+
+        List<NewsItem> appended = new ArrayList<>(current);
+        for (NewsItem newsItem : newsPage.getNewsItems()) {
+            if (loadedUrls.add(newsItem.getUrl())) {
+                appended.add(newsItem);
+            }
+        }
+
+        // Drop the earliest loaded pages' worth of news items from the start if there are too many
+        int maxItems = pageSize * MAX_RETAINED_PAGES;
+        if (appended.size() > maxItems) {
+            appended = new ArrayList<>(appended.subList(appended.size() - maxItems, appended.size()));
+        }
+
+        hasNextPage = newsPage.hasNextPage();
+        newsItems = appended;
+
+        // Start fetching the next page, so it's ready when the user scrolls to the end
+        if (hasNextPage) {
+            prefetchPage();
+        }
+
+        return appended;
+    }
+
+    /**
+     * Starts fetching the next page in the background, unless it's already being fetched or the
+     * loader has been reset. Called from loadInBackground(), which only runs one load at a time.
+     */
+    private void prefetchPage() {
+        if (prefetchedPage != null || prefetchExecutor.isShutdown()) {
+            return;
+        }
+
+        try {
+            prefetchedPage = prefetchExecutor.submit(new Callable<LoadError>() {
+                @Override
+                public LoadError call() {
+                    return feedCursor.fill(SystemClock.elapsedRealtime() + LOAD_BUDGET_MILLIS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The loader was reset between the check and the submit, so nothing will be appended
+        }
+    }
+
+    /**
+     * Cancels the fetch of the next page ahead of time, if there is one. Whatever it has
+     * fetched already is kept by the cursor.
+     */
+    private void discardPrefetchedPage() {
+        if (prefetchedPage != null) {
+            prefetchedPage.cancel(true);
+            prefetchedPage = null;
+        }
+    }
+
+    /**
+     * Collects news items as they're parsed, on whichever threads the queries run on, and hands
+     * them to the {@link OnBatchLoadedListener} on the main thread. A batch is posted as soon as
+     * the first news item arrives, and whatever arrives while it's waiting to be handed over is
+     * added to it, so the first news item is shown straight away and the main thread is never
+     * posted to more often than it can keep up with.
+     */
+    private class BatchPublisher implements NewsItemJsonParser.OnNewsItemParsedListener,
+            Runnable {
+
+        /** When the load started, in ms since boot. */
+        private final long startMillis = SystemClock.elapsedRealtime();
+
+        /** The URLs of the news items delivered or handed over so far. */
+        private final Set<String> seenUrls = new HashSet<>();
+
+        /** The news items which haven't been handed over yet. */
+        private final List<NewsItem> pending = new ArrayList<>();
+
+        /** True if a batch has been posted to the main thread and not handed over yet. */
+        private boolean posted;
+
+        /** True once the first batch has been handed over. Main thread only. */
+        private boolean publishedFirst;
+
+        /** True once the load has finished, after which nothing more is handed over. */
+        private boolean finished;
+
+        /**
+         * Constructs a new {@link BatchPublisher}.
+         * @param delivered the news items delivered so far, which aren't handed over again.
+         *                  May be null.
+         */
+        BatchPublisher(List<NewsItem> delivered) {
+            if (delivered != null) {
+                for (NewsItem newsItem : delivered) {
+                    seenUrls.add(newsItem.getUrl());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void onNewsItemParsed(NewsItem newsItem) {
+            // The same news item can come from more than one query, or from a retried request
+            if (finished || !seenUrls.add(newsItem.getUrl())) {
+                return;
+            }
+
+            newsItem.getFormattedTime();
+            pending.add(newsItem);
+            if (!posted) {
+                posted = true;
+                mainHandler.post(this);
+            }
+        }
+
+        /**
+         * Stops handing over news items, because the load has finished and its result is about
+         * to be delivered. A batch which has already been posted is still handed over, before
+         * the result, since they're both posted to the main thread in order.
+         */
+        synchronized void finish() {
+            finished = true;
+        }
+
+        @Override
+        public void run() {
+            List<NewsItem> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                posted = false;
+            }
+
+            if (batchListener == null || !isStarted() || batch.isEmpty()) {
+                return;
+            }
+
+            if (!publishedFirst) {
+                publishedFirst = true;
+                Metrics.record(Metrics.FIRST_BATCH_MS,
+                        SystemClock.elapsedRealtime() - startMillis);
+            }
+            batchListener.onBatchLoaded(batch);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.android.guardiannews;
+
+import java.util.List;
+
+/**
+ * This class represents a single page of results from a Guardian search.
+ */
+public class NewsPage {
+    /** The news items on this page. */
+    private List<NewsItem> newsItems;
+    /** The number of this page, starting from 1. */
+    private int currentPage;
+    /** The total number of pages the search has. */
+    private int pages;
+    /**
+     * Why the page couldn't be fetched, or {@link LoadError#NONE} if it was. A page with an error
+     * is usually empty. An empty page which was fetched successfully just means there were no
+     * results.
+     */
+    private LoadError error;
+
+    public NewsPage(List<NewsItem> newsItems, int currentPage, int pages) {
+        this(newsItems, currentPage, pages, LoadError.NONE);
+    }
+
+    public NewsPage(List<NewsItem> newsItems, int currentPage, int pages, LoadError error) {
+        this.newsItems = newsItems;
+        this.currentPage = currentPage;
+        this.pages = pages;
+        this.error = error;
+    }
+
+    public List<NewsItem> getNewsItems() {
+        return newsItems;
+    }
+
+    public int getCurrentPage() {
+        return currentPage;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public LoadError getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == LoadError.NONE;
+    }
+
+    /**
+     * Returns true if there are more pages of results after this one.
+     */
+    public boolean hasNextPage() {
+        return currentPage < pages;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.guardiannews;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+import java.util.List;
+
+/**
+ * A {@link NewsSearchLoader} searches the stored {@link NewsItem}s for the text the user has
+ * typed, using the full-text index in the {@link NewsStore}. It never goes to the network, so
+ * the results can be shown as the user types, even with no internet connection.
+ */
+public class NewsSearchLoader extends AsyncTaskLoader<List<NewsItem>> {
+
+    /** The most news items shown for a search. */
+    private static final int MAX_RESULTS = 100;
+
+    private final NewsStore newsStore;
+
+    /** What the user typed. */
+    private final String searchText;
+
+    /** The results of the search, once it has been run. */
+    private List<NewsItem> results;
+
+    /**
+     * Constructs a new {@link NewsSearchLoader}.
+     * @param context the {@link Context} of the activity
+     * @param searchText what the user typed
+     */
+    public NewsSearchLoader(Context context, String searchText) {
+        super(context);
+        newsStore = new NewsStore(context);
+        this.searchText = searchText;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        // The stored news items could have changed since the search was run, but not in a way
+        // that's worth searching again for while the user is still typing
+        if (results != null) {
+            deliverResult(results);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public List<NewsItem> loadInBackground() {
+        return NewsItem.prepareForDisplay(newsStore.searchNewsItems(searchText, MAX_RESULTS));
+    }
+
+    @Override
+    public void deliverResult(List<NewsItem> data) {
+        results = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        results = null;
+    }
+
+    /**
+     * Returns what the user typed.
+     */
+    public String getSearchText() {
+        return searchText;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.guardiannews;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A {@link NewsSnapshot} keeps the news feed as it was last shown in a single small file, encoded
+ * by {@link NewsItemCodec}, so that when the app is started again the feed can be restored with
+ * one sequential read rather than a database query.
+ *
+ * All of the methods touch the file system, so they should only be called on a background thread.
+ */
+public class NewsSnapshot {
+
+    private static final String LOG_TAG = NewsSnapshot.class.getName();
+
+    /** The suffix given to the file while it's still being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The file the snapshot is kept in. */
+    private final File file;
+
+    /**
+     * Constructs a new {@link NewsSnapshot}.
+     * @param file the file to keep the snapshot in
+     */
+    public NewsSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the news items in the snapshot.
+     * @return the news items, or null if there's no snapshot or it can't be read
+     */
+    public synchronized List<NewsItem> read() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            return NewsItemCodec.decode(DiskCache.readFully(input));
+        } catch (IOException e) {
+            // Most likely written by an older version of the app, so it'll be replaced next time
+            Log.e(LOG_TAG, "Problem reading snapshot, read", e);
+            return null;
+        } finally {
+            DiskCache.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given news items.
+     */
+    public synchronized void write(List<NewsItem> newsItems) {
+        // Write to a temporary file first and then rename it, so that a half-written snapshot
+        // is never read
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        OutputStream output = null;
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(temp));
+            NewsItemCodec.encode(newsItems, output);
+            output.close();
+            output = null;
+
+            if (!temp.renameTo(file)) {
+                Log.e(LOG_TAG, "Problem renaming snapshot, write");
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing snapshot, write", e);
+            temp.delete();
+        } finally {
+            DiskCache.closeQuietly(output);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.android.guardiannews;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.guardiannews.NewsContract.NewsItemEntry;
+import com.example.android.guardiannews.NewsContract.NewsSearchEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link NewsStore} keeps the {@link NewsItem}s which have been downloaded in a local database,
+ * so that the news feed can be shown straight away when the app starts, even with no internet
+ * connection.
+ *
+ * All of the methods touch the database, so they should only be called on a background thread.
+ */
+public class NewsStore {
+
+    /** Every column needed to build a {@link NewsItem}, in the order they're read. */
+    private static final String[] NEWS_ITEM_PROJECTION = {
+            NewsItemEntry.COLUMN_WEB_URL,
+            NewsItemEntry.COLUMN_WEB_TITLE,
+            NewsItemEntry.COLUMN_THUMBNAIL_URL,
+            NewsItemEntry.COLUMN_SECTION_NAME,
+            NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE,
+            NewsItemEntry.COLUMN_CONTRIBUTOR
+    };
+
+    /**
+     * Finds the news items whose title, section name or contributor match a full-text query,
+     * newest first. The news items are looked up in the index by docid, and then sorted using
+     * the publication date index.
+     */
+    private static final String SEARCH_SELECTION = NewsItemEntry._ID + " IN (SELECT "
+            + NewsSearchEntry.COLUMN_DOCID + " FROM " + NewsSearchEntry.TABLE_NAME
+            + " WHERE " + NewsSearchEntry.TABLE_NAME + " MATCH ?)";
+
+    private final NewsDbHelper dbHelper;
+
+    /**
+     * Constructs a new {@link NewsStore}.
+     * @param context any {@link Context} of the app
+     */
+    public NewsStore(Context context) {
+        dbHelper = NewsDbHelper.getInstance(context);
+    }
+
+    /**
+     * Returns the most recently published stored news items, newest first.
+     * @param limit the maximum number of news items to return
+     */
+    public List<NewsItem> getNewestNewsItems(int limit) {
+        List<NewsItem> newsItems = new ArrayList<>();
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(NewsItemEntry.TABLE_NAME, NEWS_ITEM_PROJECTION,
+                null, null, null, null,
+                NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE + " DESC",
+                String.valueOf(limit));
+        readNewsItems(cursor, newsItems);
+
+        return newsItems;
+    }
+
+    /**
+     * Returns the stored news items whose title, section name or contributor contain words
+     * starting with every word of the given search text, newest first. For example "joh may"
+     * finds news items by or about John Mayer.
+     * @param searchText what the user typed, which is matched without regard to case
+     * @param limit the maximum number of news items to return
+     * @return the matching news items, which is empty if the search text has no words in it
+     */
+    public List<NewsItem> searchNewsItems(String searchText, int limit) {
+        List<NewsItem> newsItems = new ArrayList<>();
+
+        String matchQuery = toPrefixQuery(searchText);
+        if (matchQuery.isEmpty()) {
+            return newsItems;
+        }
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(NewsItemEntry.TABLE_NAME, NEWS_ITEM_PROJECTION,
+                SEARCH_SELECTION, new String[]{matchQuery}, null, null,
+                NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE + " DESC",
+                String.valueOf(limit));
+        readNewsItems(cursor, newsItems);
+
+        return newsItems;
+    }
+
+    /**
+     * Turns what the user typed into an FTS query which matches every word as a prefix, e.g.
+     * "John May" becomes "john* may*". Anything other than letters and digits is treated as a
+     * space, so the user can't type FTS syntax by accident.
+     */
+    static String toPrefixQuery(String searchText) {
+        StringBuilder query = new StringBuilder();
+        for (String word : searchText.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append(word).append('*');
+            }
+        }
+        return query.toString();
+    }
+
+    /**
+     * Reads a {@link NewsItem} from each row of a cursor over {@link #NEWS_ITEM_PROJECTION} into
+     * the given list, and closes the cursor.
+     */
+    private static void readNewsItems(Cursor cursor, List<NewsItem> newsItems) {
+        try {
+            while (cursor.moveToNext()) {
+                newsItems.add(new NewsItem(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getString(2),
+                        cursor.getString(3),
+                        cursor.getString(4),
+                        cursor.getString(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the publication date of the most recently published stored news item, in the
+     * format "2015-08-05T19:24:32Z", or null if nothing is stored.
+     */
+    public String getNewestPublicationDate() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(NewsItemEntry.TABLE_NAME,
+                new String[]{"MAX(" + NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE + ")"},
+                null, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores the given news items, replacing any stored news item with the same web URL.
+     *
+     * A news item which is already stored is updated in place rather than replaced, so that it
+     * keeps its _ID, and the search index's triggers only have to reindex it. A REPLACE would
+     * delete the old row without firing the delete trigger, leaving it in the index.
+     */
+    public void upsertNewsItems(List<NewsItem> newsItems) {
+        if (newsItems.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        // Do all of the writes in a single transaction, which is much faster than one each
+        db.beginTransaction();
+        try {
+            for (NewsItem newsItem : newsItems) {
+                values.clear();
+                values.put(NewsItemEntry.COLUMN_WEB_URL, newsItem.getUrl());
+                values.put(NewsItemEntry.COLUMN_WEB_TITLE, newsItem.getWebTitle());
+                values.put(NewsItemEntry.COLUMN_THUMBNAIL_URL, newsItem.getThumbnailUrl());
+                values.put(NewsItemEntry.COLUMN_SECTION_NAME, newsItem.getSectionName());
+                values.put(NewsItemEntry.COLUMN_WEB_PUBLICATION_DATE, newsItem.getTime());
+                values.put(NewsItemEntry.COLUMN_CONTRIBUTOR, newsItem.getContributor());
+
+                int updated = db.update(NewsItemEntry.TABLE_NAME, values,
+                        NewsItemEntry.COLUMN_WEB_URL + " = ?", new String[]{newsItem.getUrl()});
+                if (updated == 0) {
+                    db.insert(NewsItemEntry.TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
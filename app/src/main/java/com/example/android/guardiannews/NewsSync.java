@@ -0,0 +1,114 @@
+package com.example.android.guardiannews;
+
+import android.os.SystemClock;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Refreshes the {@link NewsStore} from the network. Both the {@link NewsItemLoader} and the
+ * background {@link NewsSyncJobService} refresh the store through here, so that if one asks for a
+ * refresh while the other's is running, it waits for that one instead of starting its own.
+ *
+ * The wait counts towards the waiting refresh's own budget, and can be interrupted, so a quick
+ * refresh for the UI is never held up for as long as a slow background sync takes, and a sync
+ * that's been stopped doesn't carry on waiting.
+ */
+public class NewsSync {
+
+    /**
+     * The maximum number of pages of new news items fetched by a refresh. If there are more new
+     * news items than this, the rest are picked up as the user scrolls.
+     */
+    private static final int MAX_REFRESH_PAGES = 5;
+
+    /** Held while a refresh is running. */
+    private static final ReentrantLock REFRESH_LOCK = new ReentrantLock();
+
+    /** When the last refresh finished, in ms since boot. Guarded by REFRESH_LOCK. */
+    private static long lastRefreshFinished = -1;
+
+    /** What went wrong with the last refresh, if anything. Guarded by REFRESH_LOCK. */
+    private static LoadError lastRefreshError = LoadError.NONE;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsSync} object.
+     * This class is only meant to hold static methods.
+     */
+    private NewsSync() {
+    }
+
+    /**
+     * Fetches the news items published since the newest stored one, and stores them. Only the
+     * new news items are downloaded, so the cost of a refresh depends on how much is new.
+     *
+     * If another refresh finishes while this one is waiting to start, that refresh's result is
+     * used and no requests are made. If it's still running when the budget runs out, or the
+     * calling thread is interrupted while it's waiting, nothing is fetched and
+     * {@link LoadError#TIMEOUT} is returned. Background thread only.
+     * @param newsStore the store to refresh
+     * @param queries the queries that make up the news feed
+     * @param pageSize the number of results on each page of each query
+     * @param budgetMillis the longest the refresh may take, in ms, including any time spent
+     *                     waiting for another refresh. Whatever was fetched in time is stored.
+     * @return what went wrong, or {@link LoadError#NONE} if the refresh fetched everything it
+     * asked for
+     */
+    public static LoadError refresh(NewsStore newsStore, List<GuardianQuery> queries,
+                                    int pageSize, long budgetMillis) {
+        return refresh(newsStore, queries, pageSize, budgetMillis, null);
+    }
+
+    /**
+     * Fetches the news items published since the newest stored one, and stores them, telling
+     * the listener about each news item as soon as it has been parsed. See
+     * {@link #refresh(NewsStore, List, int, long)}.
+     * @param listener told about each {@link NewsItem} as it's parsed, from any of the threads
+     *                 the queries run on. It isn't told anything if another refresh's result is
+     *                 used instead. May be null.
+     */
+    public static LoadError refresh(NewsStore newsStore, List<GuardianQuery> queries,
+                                    int pageSize, long budgetMillis,
+                                    NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        long requested = SystemClock.elapsedRealtime();
+        long deadline = requested + budgetMillis;
+
+        try {
+            if (!REFRESH_LOCK.tryLock(budgetMillis, TimeUnit.MILLISECONDS)) {
+                return LoadError.TIMEOUT;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return LoadError.TIMEOUT;
+        }
+
+        try {
+            // Someone else refreshed while we were waiting for them, so their result is as
+            // fresh as ours would be
+            if (lastRefreshFinished >= requested) {
+                return lastRefreshError;
+            }
+
+            LoadError error = LoadError.NONE;
+            String newestDate = newsStore.getNewestPublicationDate();
+
+            for (int page = 1; page <= MAX_REFRESH_PAGES; page++) {
+                NewsPage newsPage = QueryUtils.fetchMergedNewsPage(queries, page, pageSize,
+                        newestDate, deadline, listener);
+                newsStore.upsertNewsItems(newsPage.getNewsItems());
+                error = newsPage.getError();
+
+                if (!newsPage.hasNextPage() || !newsPage.isSuccessful()) {
+                    break;
+                }
+            }
+
+            lastRefreshFinished = SystemClock.elapsedRealtime();
+            lastRefreshError = error;
+            return error;
+        } finally {
+            REFRESH_LOCK.unlock();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.guardiannews;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * A {@link NewsSyncJobService} refreshes the {@link NewsStore} in the background every few hours,
+ * and downloads the thumbnails of the newest stored news items into the {@link ImageCache}, so
+ * that opening the app shows fresh news items without waiting for the network.
+ *
+ * It only runs on an unmetered network while the device is charging, so it costs the user
+ * neither data nor battery. If a sync fails, JobScheduler retries it with exponential backoff.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncJobService extends JobService {
+
+    private static final String LOG_TAG = NewsSyncJobService.class.getName();
+
+    /** Identifies the sync job to JobScheduler. Unique within the app. */
+    private static final int JOB_ID = 1;
+
+    /** How often the sync job runs, in ms. */
+    private static final long SYNC_INTERVAL_MILLIS = 3 * AlarmManager.INTERVAL_HOUR;
+
+    /** How long to wait before retrying the first time a sync fails, in ms. Doubles each time. */
+    private static final long INITIAL_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    /** The longest the refresh may take before the sync gives up and tries again later, in ms. */
+    private static final long SYNC_BUDGET_MILLIS = 2 * 60 * 1000;
+
+    /** The number of the newest stored news items whose thumbnails are downloaded ahead of time. */
+    private static final int PREWARM_THUMBNAIL_COUNT = 2 * QueryUtils.DEFAULT_PAGE_SIZE;
+
+    /** The thread the current sync runs on, or null if there isn't one. Main thread only. */
+    private SyncThread syncThread;
+
+    /**
+     * Schedules the sync job, unless it's already scheduled. The job is persisted, so it only
+     * has to be scheduled once, but it's cheap to check every time the app starts.
+     * @param context any {@link Context} of the app
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+            if (pendingJob.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, NewsSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build();
+
+        if (jobScheduler.schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Problem scheduling the news sync job");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // onStartJob() is called on the main thread, so do the work somewhere else
+        syncThread = new SyncThread(params);
+        syncThread.start();
+
+        // The job is still running, until the thread calls jobFinished()
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The device has been unplugged or has left the unmetered network, so stop as soon as
+        // possible and have JobScheduler try again later
+        if (syncThread != null) {
+            syncThread.stopSync();
+            syncThread = null;
+        }
+        return true;
+    }
+
+    /**
+     * Refreshes the store and downloads the newest thumbnails, then tells JobScheduler that
+     * the job has finished.
+     */
+    private class SyncThread extends Thread {
+
+        private final JobParameters params;
+
+        /** Set once the job has been stopped, so the sync should stop too. */
+        private volatile boolean stopped;
+
+        SyncThread(JobParameters params) {
+            super(LOG_TAG);
+            this.params = params;
+        }
+
+        void stopSync() {
+            stopped = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            Context context = NewsSyncJobService.this;
+            NewsStore newsStore = new NewsStore(context);
+
+            // If the app is refreshing the store at the same time, this waits for it to finish
+            // and uses its result rather than fetching everything a second time
+            LoadError error = NewsSync.refresh(newsStore, new SavedQueries(context).getQueries(),
+                    QueryUtils.DEFAULT_PAGE_SIZE, SYNC_BUDGET_MILLIS);
+            boolean successful = error == LoadError.NONE;
+
+            if (successful && !stopped) {
+                successful = prewarmThumbnails(newsStore);
+            }
+
+            if (!stopped) {
+                // Ask for a retry with backoff if anything failed
+                jobFinished(params, !successful);
+            }
+        }
+
+        /**
+         * Downloads the thumbnails of the newest stored news items into the disk cache.
+         * @return true if every thumbnail is now in the disk cache
+         */
+        private boolean prewarmThumbnails(NewsStore newsStore) {
+            ImageCache imageCache = ImageCache.getInstance(NewsSyncJobService.this);
+            boolean successful = true;
+            List<NewsItem> newsItems = newsStore.getNewestNewsItems(PREWARM_THUMBNAIL_COUNT);
+            for (NewsItem newsItem : newsItems) {
+                if (stopped) {
+                    return false;
+                }
+
+                String thumbnailUrl = newsItem.getThumbnailUrl();
+                if (thumbnailUrl != null && !thumbnailUrl.isEmpty()) {
+                    successful &= ImageDownloader.downloadToDisk(imageCache, thumbnailUrl,
+                            ThumbnailFetcher.DEFAULT_TIMEOUT_MILLIS);
+                }
+            }
+            return successful;
+        }
+    }
+}
@@ -8,30 +8,76 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import java.net.URL;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
-import static android.R.attr.data;
-import static android.R.id.empty;
-import static android.os.Build.VERSION_CODES.N;
-
 public class NewsfeedActivity extends AppCompatActivity
         implements LoaderManager.LoaderCallbacks<List<NewsItem>> {
 
+    private static final String LOG_TAG = NewsfeedActivity.class.getName();
+
+    /** The id of the loader for the news feed. */
+    private static final int NEWS_FEED_LOADER_ID = 0;
+
+    /** The id of the loader which searches the stored news items. */
+    private static final int SEARCH_LOADER_ID = 1;
+
+    /** The key the search text is passed to the search loader under. */
+    private static final String ARG_SEARCH_TEXT = "search_text";
+
+    /**
+     * When the user scrolls to within this many rows of the end of the list, the next page
+     * of news items is loaded.
+     */
+    private static final int LOAD_MORE_THRESHOLD = 5;
+
+    /** The key the encoded news items are saved under in the instance state. */
+    private static final String STATE_NEWS_ITEMS = "news_items";
+
+    /**
+     * The most news items saved in the instance state. The Bundle has to fit in a binder
+     * transaction, and the rest will be loaded from the snapshot anyway.
+     */
+    private static final int MAX_SAVED_NEWS_ITEMS = 100;
+
+    private ListView listView;
+
     private NewsfeedArrayAdapter adapter;
 
+    private ThumbnailFetcher thumbnailFetcher;
+
+    private ThumbnailPrefetcher thumbnailPrefetcher;
+
     private ProgressBar loadingIndicator;
 
     private TextView emptyStateView;
 
+    /** The last load error the user was told about, so they aren't told about it repeatedly. */
+    private LoadError shownError = LoadError.NONE;
+
+    /** The latest news items delivered by the news feed loader, shown again after a search. */
+    private List<NewsItem> feedItems;
+
+    /** What the user is searching for, or null if the news feed is being shown. */
+    private String searchText;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -41,15 +87,38 @@ public class NewsfeedActivity extends AppCompatActivity
         // the onCreate() method is called
         setupUI();
 
-        // If there's an internet connection, start the loader
-        // Otherwise turn off the loading indicator and have the empty state TextView explain
-        // there is no internet
-        if (isNetworkAvailable()) {
-            getLoaderManager().initLoader(0, null, this);
-        } else {
-            loadingIndicator.setVisibility(View.GONE);
-            emptyStateView.setText(R.string.no_internet);
+        // The search box isn't restored along with the activity, so neither is the search
+        getLoaderManager().destroyLoader(SEARCH_LOADER_ID);
+
+        // Start the loader, which shows the stored news items straight away, even if there's no
+        // internet connection, before refreshing them. If the process was killed while the app
+        // was in the background, a new loader is created with the saved instance state, and
+        // shows the news items that were showing instead.
+        NewsItemLoader loader = (NewsItemLoader) getLoaderManager().initLoader(
+                NEWS_FEED_LOADER_ID, savedInstanceState, this);
+
+        // Show news items as soon as they arrive, rather than when the whole load is finished.
+        // Their thumbnails are fetched as their rows are shown, and fill in when they're ready.
+        loader.setOnBatchLoadedListener(new NewsItemLoader.OnBatchLoadedListener() {
+            @Override
+            public void onBatchLoaded(List<NewsItem> batch) {
+                showBatch(batch);
+            }
+        });
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        // Save the news feed rather than what the list is showing, which is the search results
+        // while the user is searching, since the search isn't restored
+        if (feedItems == null) {
+            return;
         }
+        List<NewsItem> newsItems =
+                feedItems.subList(0, Math.min(feedItems.size(), MAX_SAVED_NEWS_ITEMS));
+        outState.putByteArray(STATE_NEWS_ITEMS, NewsItemCodec.encode(newsItems));
     }
 
     /**
@@ -70,7 +139,7 @@ public class NewsfeedActivity extends AppCompatActivity
      */
     private void setupUI() {
         // Get the ListView
-        ListView listView = (ListView) findViewById(R.id.newsfeed_list_view);
+        listView = (ListView) findViewById(R.id.newsfeed_list_view);
 
         // Find the TextView that should be the empty state view for the ListView
         emptyStateView = (TextView) findViewById(R.id.empty_view);
@@ -82,8 +151,11 @@ public class NewsfeedActivity extends AppCompatActivity
         // Make the data source for the ListView
         final List<NewsItem> newsItems = new ArrayList<>();
 
-        // Create an adapter to manage the data set in this activity
-        adapter = new NewsfeedArrayAdapter(this, newsItems);
+        // Create an adapter to manage the data set in this activity, which fetches the thumbnail
+        // for each row as it is shown
+        thumbnailFetcher = new ThumbnailFetcher(this);
+        adapter = new NewsfeedArrayAdapter(this, newsItems, thumbnailFetcher);
+        thumbnailPrefetcher = new ThumbnailPrefetcher(this, thumbnailFetcher);
 
         // Set the adapter to the ListView
         listView.setAdapter(adapter);
@@ -105,33 +177,320 @@ public class NewsfeedActivity extends AppCompatActivity
                 }
             }
         });
+
+        // Load the next page of news items when the user gets near the end of the list, and
+        // the thumbnails of the rows about to scroll into view
+        listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+                thumbnailPrefetcher.onScrollStateChanged(view, scrollState);
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                thumbnailPrefetcher.onScroll(view, firstVisibleItem, visibleItemCount,
+                        totalItemCount);
+
+                // Search results are everything that matched, so there are no more pages
+                if (searchText == null && totalItemCount > 0
+                        && firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+                    Loader<List<NewsItem>> loader =
+                            getLoaderManager().getLoader(NEWS_FEED_LOADER_ID);
+                    if (loader != null) {
+                        ((NewsItemLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
     }
 
     @Override
     public Loader<List<NewsItem>> onCreateLoader(int id, Bundle args) {
-        return new NewsItemLoader(this);
+        if (id == SEARCH_LOADER_ID) {
+            return new NewsSearchLoader(this, args.getString(ARG_SEARCH_TEXT));
+        }
+
+        // The news feed is made up of a query for each topic the user follows. The news items
+        // saved in the instance state are decoded by the loader, off the main thread.
+        NewsItemLoader loader = new NewsItemLoader(this, new SavedQueries(this).getQueries());
+        if (args != null) {
+            loader.setSavedNewsItems(args.getByteArray(STATE_NEWS_ITEMS));
+        }
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<List<NewsItem>> loader, List<NewsItem> data) {
-        // When the Loader is done loading, ensure the empty state View reads "No results found."
-        emptyStateView.setText(R.string.no_results_found);
+        if (loader.getId() == SEARCH_LOADER_ID) {
+            showSearchResults(((NewsSearchLoader) loader).getSearchText(), data);
+            return;
+        }
 
-        // When the load is complete, we can hide the loading indicator and set it so that it
-        // doesn't take up any more room for layout purposes
-        loadingIndicator = (ProgressBar) findViewById(R.id.loading_indicator);
+        // Keep the news feed up to date while the user is searching, but don't show it until
+        // they've finished
+        feedItems = data;
+        if (searchText != null) {
+            return;
+        }
+
+        // If the stored news items have been delivered but there weren't any, keep the loading
+        // indicator up while they're refreshed from the network
+        NewsItemLoader newsItemLoader = (NewsItemLoader) loader;
+        boolean stillLoading = newsItemLoader.isLoading();
+        LoadError error = newsItemLoader.getLastError();
+        boolean hasData = data != null && !data.isEmpty();
+        if (!stillLoading || hasData) {
+            // When the Loader is done loading, ensure the empty state View reads
+            // "No results found.", or explains why the news items couldn't be fetched
+            emptyStateView.setText(getErrorMessage(error));
+
+            // If there are stored news items to show, they're shown anyway, so just let the
+            // user know they may be out of date
+            if (hasData && error != LoadError.NONE && error != shownError) {
+                Toast.makeText(this, getString(R.string.showing_saved_news,
+                        getString(getErrorMessage(error))), Toast.LENGTH_SHORT).show();
+            }
+            shownError = error;
+
+            // When the load is complete, we can hide the loading indicator and set it so that it
+            // doesn't take up any more room for layout purposes
+            loadingIndicator = (ProgressBar) findViewById(R.id.loading_indicator);
+            loadingIndicator.setVisibility(View.GONE);
+        }
+
+        // Remember which news item is at the top of the list, since the oldest pages may have
+        // been dropped from the start of the new data set
+        NewsItem firstVisibleItem = null;
+        int firstVisibleTop = 0;
+        if (!adapter.isEmpty()) {
+            firstVisibleItem = adapter.getItem(listView.getFirstVisiblePosition());
+            View firstVisibleView = listView.getChildAt(0);
+            firstVisibleTop = firstVisibleView == null ? 0 : firstVisibleView.getTop();
+        }
+
+        // Merge the new data set into the adapter, which only rebinds the rows that changed, and
+        // does nothing at all if a refresh didn't find anything new
+        NewsItemDiff diff = adapter.setNewsItems(data);
+        if (BuildConfig.DEBUG) {
+            Log.v(LOG_TAG, "onLoadFinished() " + diff);
+        }
+
+        // Keep the same news item at the top of the list, if it's still there, even if news
+        // items have been inserted above it
+        if (firstVisibleItem != null && diff.hasChanges()) {
+            int newPosition = indexOfUrl(data, firstVisibleItem.getUrl());
+            if (newPosition >= 0) {
+                listView.setSelectionFromTop(newPosition, firstVisibleTop);
+            }
+        }
+    }
+
+    /**
+     * Adds news items to the end of the news feed while it's still loading. The whole news feed
+     * is delivered to {@link #onLoadFinished} once it has loaded, in its proper order.
+     * @param batch the news items which have just been fetched
+     */
+    private void showBatch(List<NewsItem> batch) {
+        if (searchText != null) {
+            return;
+        }
+
+        loadingIndicator.setVisibility(View.GONE);
+        adapter.appendNewsItems(batch);
+    }
+
+    /**
+     * Shows the stored news items which matched a search, if it's still the one the user wants.
+     * @param resultsSearchText what the user had typed when the search was run
+     * @param results the matching news items
+     */
+    private void showSearchResults(String resultsSearchText, List<NewsItem> results) {
+        if (!resultsSearchText.equals(searchText)) {
+            return;
+        }
+
+        emptyStateView.setText(R.string.no_search_results);
         loadingIndicator.setVisibility(View.GONE);
+        adapter.setNewsItems(results);
+        listView.setSelection(0);
+    }
+
+    /**
+     * Searches the stored news items for the given text, or shows the news feed again if there
+     * isn't any.
+     */
+    private void search(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            closeSearch();
+            return;
+        }
+
+        if (text.equals(searchText)) {
+            return;
+        }
+        searchText = text;
+
+        // Restarting the loader drops the results of the previous search, so only the latest
+        // one is ever shown
+        Bundle args = new Bundle();
+        args.putString(ARG_SEARCH_TEXT, text);
+        getLoaderManager().restartLoader(SEARCH_LOADER_ID, args, this);
+    }
+
+    /**
+     * Stops searching, and shows the news feed again.
+     */
+    private void closeSearch() {
+        if (searchText == null) {
+            return;
+        }
+        searchText = null;
+
+        getLoaderManager().destroyLoader(SEARCH_LOADER_ID);
+        emptyStateView.setText(getErrorMessage(shownError));
+        adapter.setNewsItems(feedItems);
+        listView.setSelection(0);
+    }
+
+    /**
+     * Returns the string resource explaining the given load error to the user.
+     */
+    private int getErrorMessage(LoadError error) {
+        // Without a connection every request fails, whatever the error says
+        if (error != LoadError.NONE && !isNetworkAvailable()) {
+            return R.string.no_internet;
+        }
 
-        // Clear the adapter of its old data set
-        adapter.clear();
-        // Update the adapter with new data set
-        if (data != null && !data.isEmpty()) {
-            adapter.addAll(data);
+        switch (error) {
+            case NO_CONNECTION:
+                return R.string.no_internet;
+            case TIMEOUT:
+                return R.string.error_timeout;
+            case SERVER_ERROR:
+                return R.string.error_server;
+            case REQUEST_REJECTED:
+                return R.string.error_request_rejected;
+            case BAD_RESPONSE:
+                return R.string.error_bad_response;
+            case SERVICE_UNAVAILABLE:
+                return R.string.error_service_unavailable;
+            default:
+                return R.string.no_results_found;
+        }
+    }
+
+    /**
+     * Returns the position of the {@link NewsItem} with the given URL in the list, or -1 if it
+     * isn't in the list.
+     */
+    private static int indexOfUrl(List<NewsItem> newsItems, String url) {
+        if (newsItems == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < newsItems.size(); i++) {
+            if (newsItems.get(i).getUrl().equals(url)) {
+                return i;
+            }
         }
+        return -1;
     }
 
     @Override
     public void onLoaderReset(Loader<List<NewsItem>> loader) {
-        adapter.clear();
+        // The news feed is shown again by closeSearch(), which resets the search loader
+        if (loader.getId() == NEWS_FEED_LOADER_ID) {
+            feedItems = null;
+            adapter.clear();
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.newsfeed, menu);
+
+        // The metrics are for developers, so don't show them to users of a release build
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+
+        // Search the stored news items as the user types
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
+        MenuItemCompat.setOnActionExpandListener(searchItem,
+                new MenuItemCompat.OnActionExpandListener() {
+                    @Override
+                    public boolean onMenuItemActionExpand(MenuItem item) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onMenuItemActionCollapse(MenuItem item) {
+                        closeSearch();
+                        return true;
+                    }
+                });
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.action_metrics)
+                    .setMessage(Metrics.dump())
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Adds the {@link Metrics} to what "adb shell dumpsys activity" prints for this activity,
+     * so they can be collected from any build.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        Metrics.dump(writer);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        // The app may be killed at any time once it's in the background, so make sure the HTTP
+        // responses cached so far are written to disk
+        GuardianNewsApplication.flushHttpCache();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // The loader outlives the activity if it's being recreated, so stop it calling back
+        Loader<List<NewsItem>> loader = getLoaderManager().getLoader(NEWS_FEED_LOADER_ID);
+        if (loader != null) {
+            ((NewsItemLoader) loader).setOnBatchLoadedListener(null);
+        }
+
+        super.onDestroy();
+
+        // Stop any thumbnails which are still being fetched for the rows of this activity
+        thumbnailPrefetcher.release();
+        thumbnailFetcher.shutdown();
     }
 }
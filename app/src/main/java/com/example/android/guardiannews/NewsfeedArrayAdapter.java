@@ -1,8 +1,8 @@
 package com.example.android.guardiannews;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,15 +10,9 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
-
-import static android.R.attr.thumbnail;
-import static android.R.id.list;
-import static android.icu.lang.UCharacter.GraphemeClusterBreak.L;
-import static android.icu.lang.UCharacter.GraphemeClusterBreak.T;
+import java.util.concurrent.Future;
 
 /**
  * A {@link NewsfeedArrayAdapter} knows how to inflate the layout for each row in a
@@ -27,19 +21,61 @@ import static android.icu.lang.UCharacter.GraphemeClusterBreak.T;
  */
 public class NewsfeedArrayAdapter extends ArrayAdapter<NewsItem> {
 
-    private static final String LOG_TAG = NewsfeedArrayAdapter.class.getName();
-
-    // When displaying the results, append "by" to the start of any NewsItem that has a contributor
-    // name that is not empty or null
-    private static final String BY_ = "by ";
+    /** Fetches the thumbnail for each row as it is shown. */
+    private final ThumbnailFetcher thumbnailFetcher;
 
     /**
      * Constructs a new {@link NewsfeedArrayAdapter}.
      * @param context the {@link Context} of the app
      * @param newsItems the list of {@link NewsItem}s, which is the data source for the adapter
+     * @param thumbnailFetcher fetches the thumbnail for each row as it is shown
      */
-    public NewsfeedArrayAdapter(Context context, List<NewsItem> newsItems) {
+    public NewsfeedArrayAdapter(Context context, List<NewsItem> newsItems,
+                                ThumbnailFetcher thumbnailFetcher) {
         super(context, 0, newsItems);
+        this.thumbnailFetcher = thumbnailFetcher;
+    }
+
+    /**
+     * Replaces the adapter's data set with the given list of {@link NewsItem}s, merging it into
+     * the one being shown by web URL. News items which haven't changed keep the objects already
+     * being shown, so their rows aren't rebound, and the ListView isn't told anything at all if
+     * nothing has changed.
+     * @param newsItems the new data set, may be null for an empty list
+     * @return what changed
+     */
+    public NewsItemDiff setNewsItems(List<NewsItem> newsItems) {
+        List<NewsItem> current = new ArrayList<>(getCount());
+        for (int i = 0; i < getCount(); i++) {
+            current.add(getItem(i));
+        }
+
+        NewsItemDiff diff = NewsItemDiff.compute(current, newsItems);
+        if (!diff.hasChanges()) {
+            return diff;
+        }
+
+        // Make all of the changes before telling the ListView, rather than once per change
+        setNotifyOnChange(false);
+        clear();
+        addAll(diff.getMergedNewsItems());
+        notifyDataSetChanged();
+        return diff;
+    }
+
+    /**
+     * Adds the given {@link NewsItem}s to the end of the adapter's data set, telling the
+     * ListView once rather than once per news item. The rows already shown aren't rebound.
+     * @param newsItems the news items to add
+     */
+    public void appendNewsItems(List<NewsItem> newsItems) {
+        if (newsItems.isEmpty()) {
+            return;
+        }
+
+        setNotifyOnChange(false);
+        addAll(newsItems);
+        notifyDataSetChanged();
     }
 
     /**
@@ -49,111 +85,121 @@ public class NewsfeedArrayAdapter extends ArrayAdapter<NewsItem> {
     @NonNull
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        long bindStart = System.nanoTime();
+        View listItemView = bindView(position, convertView, parent);
+        Metrics.record(Metrics.BIND_TIME_US, (System.nanoTime() - bindStart) / 1000);
+        return listItemView;
+    }
 
+    /**
+     * Fills in a row for the {@link NewsItem} at the given position, reusing convertView if
+     * there is one.
+     */
+    private View bindView(int position, View convertView, ViewGroup parent) {
         View listItemView = convertView;
+        ViewHolder holder;
 
-        // Check if an existing view is being reused, otherwise inflate the view
+        // Check if an existing view is being reused, otherwise inflate the view and look up its
+        // child views once, keeping them in a ViewHolder for whenever the view is reused
         if (listItemView == null) {
             listItemView = LayoutInflater.from(getContext()).inflate(
                     R.layout.newsfeed_list_item, parent, false);
+            holder = new ViewHolder(listItemView);
+            listItemView.setTag(holder);
+        } else {
+            holder = (ViewHolder) listItemView.getTag();
         }
 
         // Get the current NewsItem
         NewsItem currentNewsItem = getItem(position);
 
+        // If the row is already showing this NewsItem, for example because the data set was
+        // refreshed without it changing, there's nothing to do. Unchanged news items are kept
+        // as the same objects when the data set is merged, so this is usually just a reference
+        // comparison.
+        if (currentNewsItem.equals(holder.newsItem)) {
+            return listItemView;
+        }
+        holder.newsItem = currentNewsItem;
+
         // Update the title TextView for the current NewsItem
-        updateTitleView(listItemView, currentNewsItem);
+        holder.titleView.setText(currentNewsItem.getWebTitle());
 
         // Update the section TextView for the current NewsItem
-        updateSectionView(listItemView, currentNewsItem);
+        holder.sectionView.setText(currentNewsItem.getDisplaySectionName());
 
-        // Update the web publication date and time TextView for the current NewsItem
-        updateDateTimeView(listItemView, currentNewsItem);
+        // Update the web publication date and time TextView for the current NewsItem, which was
+        // formatted when the NewsItem was created
+        holder.dateView.setText(currentNewsItem.getFormattedTime());
 
-        // Update the contributor TextView for the current NewsItem
-        updateContributorView(listItemView, currentNewsItem);
+        // Update the contributor TextView for the current NewsItem, which already has "by " at
+        // the start
+        holder.contributorView.setText(currentNewsItem.getDisplayContributor());
 
         // Update the thumbnail ImageView for the current NewsItem
-        updateThumbnailView(listItemView, currentNewsItem);
+        updateThumbnailView(holder, currentNewsItem);
 
         return listItemView;
     }
 
-    private void updateThumbnailView(View listItemView, NewsItem currentNewsItem) {
-        // Update the thumbnail ImageView for the NewsItem
-        ImageView thumbnail = (ImageView)
-                listItemView.findViewById(R.id.newsfeed_list_item_image);
-        // If the NewsItem has an associated thumbnail, display it
-        // Otherwise, use the default thumbnail
-        if (currentNewsItem.getThumbnail() != null) {
-            thumbnail.setImageBitmap(currentNewsItem.getThumbnail());
-        } else {
-            thumbnail.setImageResource(R.drawable.null_thumbnail);
+    private void updateThumbnailView(final ViewHolder holder, NewsItem currentNewsItem) {
+        // If this row was recycled while it was still waiting for the thumbnail of the NewsItem
+        // it showed before, that thumbnail isn't wanted any more
+        if (holder.thumbnailFetch != null) {
+            thumbnailFetcher.cancel(holder.thumbnailFetch);
+            holder.thumbnailFetch = null;
         }
-    }
 
-    private void updateContributorView(View listItemView, NewsItem currentNewsItem) {
-        // Update the contributor name for the NewsItem
-        TextView contributorView = (TextView)
-                listItemView.findViewById(R.id.newsfeed_list_item_contributor);
-        // Stick "by " at the start of the contributor's name before updating the TextView if
-        // the contributor name string is non-empty.
-        String contributorName = currentNewsItem.getContributor();
-        if (contributorName != "") {
-            contributorName = BY_ + contributorName;
+        // If the NewsItem doesn't have an associated thumbnail, use the default thumbnail
+        String thumbnailUrl = currentNewsItem.getThumbnailUrl();
+        if (thumbnailUrl == null) {
+            holder.thumbnailView.setImageResource(R.drawable.null_thumbnail);
+            return;
         }
-        contributorView.setText(contributorName);
-    }
 
-    private void updateDateTimeView(View listItemView, NewsItem currentNewsItem) {
-        // Update the web publication date TextView for the NewsItem
-        TextView dateView = (TextView)
-                listItemView.findViewById(R.id.newsfeed_list_item_date);
-        String formattedTime = formatDate(currentNewsItem.getTime());
-        dateView.setText(formattedTime);
-    }
-
-    private void updateSectionView(View listItemView, NewsItem currentNewsItem) {
-        // Update the section TextView for the NewsItem
-        TextView sectionView = (TextView)
-                listItemView.findViewById(R.id.newsfeed_list_item_section);
-        sectionView.setText(currentNewsItem.getSectionName().toUpperCase());
-    }
+        // Show the thumbnail straight away if it's already in memory. Otherwise leave the
+        // ImageView empty and fill it in once the thumbnail has been fetched
+        Bitmap cachedThumbnail = thumbnailFetcher.getCachedThumbnail(thumbnailUrl);
+        if (cachedThumbnail != null) {
+            holder.thumbnailView.setImageBitmap(cachedThumbnail);
+            return;
+        }
 
-    private void updateTitleView(View listItemView, NewsItem currentNewsItem) {
-        // Update the title TextView for the NewsItem
-        TextView titleView = (TextView)
-                listItemView.findViewById(R.id.newsfeed_list_item_title);
-        titleView.setText(currentNewsItem.getWebTitle());
+        holder.thumbnailView.setImageDrawable(null);
+        holder.thumbnailFetch = thumbnailFetcher.fetchThumbnail(thumbnailUrl,
+                new ThumbnailFetcher.OnThumbnailLoadedListener() {
+                    @Override
+                    public void onThumbnailLoaded(String url, Bitmap bitmap) {
+                        holder.thumbnailFetch = null;
+                        holder.thumbnailView.setImageBitmap(bitmap);
+                    }
+                });
     }
 
     /**
-     * Converts a String representing a datetime in the format "2015-08-05T19:24:32Z" to a String
-     * representing the date and time in the format "Sat, 05 Aug 07:24 PM"
-     * @param datetime a String in the format "2015-08-05T19:24:32Z"
-     * @return a String in the format "Sat, 05 Aug 07:24 PM"
+     * Holds on to the child views of a row, so that they only have to be looked up once, along
+     * with what the row is currently showing.
      */
-    private String formatDate(String datetime) {
-        // Define the expected format of the datetime String that needs to be parsed
-        // Expected format is something like 2015-08-05T19:24:32Z
-        SimpleDateFormat expectedFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-
-        // The datetime to be returned after formatting
-        String formattedDateTime = "";
-        Log.i(LOG_TAG, datetime);
-
-        try {
-            Date dateAndTime = expectedFormat.parse(datetime);
-
-            // Define the format of the String that we want as output
-            // Desired format is something like Sun, 20 Aug 05:00 PM
-            SimpleDateFormat desiredFormat = new SimpleDateFormat("EEE, d MMM yyyy 'at' hh:mm aaa");
-            formattedDateTime = desiredFormat.format(dateAndTime);
-
-        } catch (ParseException e) {
-            Log.e(LOG_TAG, "Problem parsing date and time", e);
+    private static class ViewHolder {
+        final ImageView thumbnailView;
+        final TextView sectionView;
+        final TextView dateView;
+        final TextView titleView;
+        final TextView contributorView;
+
+        /** The NewsItem the row is bound to, or null if it hasn't been bound yet. */
+        NewsItem newsItem;
+
+        /** The fetch of the row's thumbnail, or null if it isn't waiting for one. */
+        Future<?> thumbnailFetch;
+
+        ViewHolder(View listItemView) {
+            thumbnailView = (ImageView) listItemView.findViewById(R.id.newsfeed_list_item_image);
+            sectionView = (TextView) listItemView.findViewById(R.id.newsfeed_list_item_section);
+            dateView = (TextView) listItemView.findViewById(R.id.newsfeed_list_item_date);
+            titleView = (TextView) listItemView.findViewById(R.id.newsfeed_list_item_title);
+            contributorView =
+                    (TextView) listItemView.findViewById(R.id.newsfeed_list_item_contributor);
         }
-
-        return formattedDateTime;
     }
 }
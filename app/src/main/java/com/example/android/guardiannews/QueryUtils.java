@@ -1,41 +1,97 @@
 package com.example.android.guardiannews;
 
-import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import static android.R.attr.name;
-import static android.R.attr.thumbnail;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by MHye on 24/10/2016.
  */
 
 public class QueryUtils {
-    private static String queryUrl =
-            "http://content.guardianapis.com/search?api-key=test&format=json&show-fields=thumbnail&show-tags=contributor&q=\"john%20mayer\"";
-
     private static final String LOG_TAG = QueryUtils.class.getName();
 
+    /** The number of results on each page, if the page size isn't given. */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /** The longest a request to the Guardian API may take to connect, in ms. */
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** The longest a request to the Guardian API may wait for more data once connected, in ms. */
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * How stale a cached response can be and still be used while the Guardian API is
+     * unavailable, in seconds.
+     */
+    private static final int MAX_STALE_SECONDS = 24 * 60 * 60;
+
+    /**
+     * Stops requests to the Guardian API for half a minute if five fail in a row. There's one
+     * for the whole process so every caller sees the same state.
+     */
+    private static final CircuitBreaker GUARDIAN_API_BREAKER = new CircuitBreaker(5, 30 * 1000);
+
+    /** Retries failed requests to the Guardian API, until {@link #GUARDIAN_API_BREAKER} opens. */
+    private static final ApiRequestExecutor GUARDIAN_API = new ApiRequestExecutor(3, 1000, 8000,
+            GUARDIAN_API_BREAKER);
+
+    /** Makes every HTTP request, to the Guardian API and for thumbnails. */
+    private static volatile HttpTransport httpTransport = new UrlConnectionTransport();
+
+    /**
+     * Runs several queries at the same time, so that a feed made of several queries takes about
+     * as long to fetch as its slowest query rather than all of them added together. Threads are
+     * only kept while there's work for them.
+     */
+    private static final ExecutorService FAN_OUT_EXECUTOR = Executors.newCachedThreadPool();
+
+    /**
+     * Shares a single request between callers which fetch the same page of the same query at
+     * the same time, e.g. the news feed and the background sync refreshing together.
+     */
+    private static final RequestCoalescer<String, NewsPage> PAGE_REQUESTS =
+            new RequestCoalescer<>();
+
+    /** Orders news items newest first, by their publication timestamps. */
+    static final Comparator<NewsItem> NEWEST_FIRST = new Comparator<NewsItem>() {
+        @Override
+        public int compare(NewsItem lhs, NewsItem rhs) {
+            long lhsMillis = lhs.getPublishedMillis();
+            long rhsMillis = rhs.getPublishedMillis();
+            return lhsMillis < rhsMillis ? 1 : (lhsMillis == rhsMillis ? 0 : -1);
+        }
+    };
+
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
      * This class is only meant to hold static variables and methods, which can be accessed
@@ -44,29 +100,350 @@ public class QueryUtils {
     private QueryUtils() {
     }
 
-    public static List<NewsItem> fetchNewsItems() {
-        List<NewsItem> newsItems;
-        URL url = createURL(queryUrl);
+    /**
+     * Replaces the {@link HttpTransport} which makes every HTTP request, to the Guardian API and
+     * for thumbnails. This is for measuring the app against a stand-in server; the app itself
+     * always uses {@link UrlConnectionTransport}.
+     * @param transport the transport to use from now on
+     */
+    public static void setHttpTransport(HttpTransport transport) {
+        httpTransport = transport;
+    }
+
+    /**
+     * Closes the circuit breaker of the Guardian API and forgets any failures, so that one
+     * measurement against a stand-in server doesn't start with requests refused because of
+     * the failures of the one before.
+     */
+    static void resetCircuitBreaker() {
+        GUARDIAN_API_BREAKER.reset();
+    }
+
+    /**
+     * Fetches the same page of several queries at the same time, and merges them into a single
+     * page of news items ordered newest first. A news item which more than one query found is
+     * only included once.
+     *
+     * The news items are only in order within the page. A later page of one query can hold news
+     * items newer than an earlier page of another, so this is for callers which store what they
+     * fetch, such as {@link NewsSync}. The news feed is paged through with a
+     * {@link NewsFeedCursor} instead.
+     * @param queries the queries to run
+     * @param page the number of the page to fetch from each query, starting from 1
+     * @param pageSize the number of results on each page of each query
+     * @param since only fetch news items published on or after the day of this date, which is
+     *              in the format "2015-08-05T19:24:32Z". May be null to fetch all news items.
+     * @param deadlineMillis when every query must be finished by, in ms since boot as given by
+     *                       {@link SystemClock#elapsedRealtime()}
+     * @return the merged page. It has a next page if any of the queries does, and the error of
+     * the first query that failed, if any did.
+     */
+    public static NewsPage fetchMergedNewsPage(List<GuardianQuery> queries, int page,
+                                               int pageSize, String since, long deadlineMillis) {
+        return fetchMergedNewsPage(queries, page, pageSize, since, deadlineMillis, null);
+    }
+
+    /**
+     * Fetches the same page of several queries at the same time, and merges them into a single
+     * page of news items ordered newest first, telling the listener about each news item as
+     * soon as it has been parsed. See {@link #fetchMergedNewsPage(List, int, int, String, long)}.
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed, in the
+     *                 order each query returns them. The queries run at the same time, so it's
+     *                 called from several threads, and may hear about the same news item from
+     *                 more than one query, or from a request which is later retried. May be null.
+     */
+    public static NewsPage fetchMergedNewsPage(
+            List<GuardianQuery> queries, int page, int pageSize, String since,
+            long deadlineMillis, NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        int[] pages = new int[queries.size()];
+        Arrays.fill(pages, page);
+        return mergeNewsPages(fetchNewsPages(queries, pages, pageSize, since, deadlineMillis,
+                listener), page);
+    }
+
+    /**
+     * Fetches a page of each of several queries at the same time, so that they take about as
+     * long as the slowest of them rather than all of them added together.
+     * @param queries the queries to run
+     * @param pages the number of the page to fetch from each query, starting from 1, in the
+     *              same order as the queries
+     * @param pageSize the number of results on each page of each query
+     * @param since only fetch news items published on or after the day of this date, which is
+     *              in the format "2015-08-05T19:24:32Z". May be null to fetch all news items.
+     * @param deadlineMillis when every query must be finished by, in ms since boot as given by
+     *                       {@link SystemClock#elapsedRealtime()}
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed, from
+     *                 whichever thread its query runs on. May be null.
+     * @return the page fetched for each query, in the same order as the queries. A query which
+     * failed has an empty page whose error says why.
+     */
+    public static List<NewsPage> fetchNewsPages(
+            List<GuardianQuery> queries, final int[] pages, final int pageSize,
+            final String since, final long deadlineMillis,
+            final NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        // Start every query but the first on another thread, and run the first one on this
+        // thread while they're going
+        List<Future<NewsPage>> futures = new ArrayList<>();
+        for (int i = 1; i < queries.size(); i++) {
+            final GuardianQuery query = queries.get(i);
+            final int page = pages[i];
+            futures.add(FAN_OUT_EXECUTOR.submit(new Callable<NewsPage>() {
+                @Override
+                public NewsPage call() {
+                    return fetchNewsPage(query, page, pageSize, since, deadlineMillis, listener);
+                }
+            }));
+        }
+
+        List<NewsPage> newsPages = new ArrayList<>();
+        if (!queries.isEmpty()) {
+            newsPages.add(fetchNewsPage(queries.get(0), pages[0], pageSize, since,
+                    deadlineMillis, listener));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Future<NewsPage> future = futures.get(i);
+            int page = pages[i + 1];
+            if (Thread.currentThread().isInterrupted()) {
+                // The caller no longer wants the results, so stop the queries still running
+                future.cancel(true);
+                newsPages.add(new NewsPage(new ArrayList<NewsItem>(), page, page,
+                        LoadError.NO_CONNECTION));
+                continue;
+            }
+            try {
+                // The queries enforce the deadline themselves, so this only gives up on one that
+                // has got stuck well past it
+                long remaining = deadlineMillis - SystemClock.elapsedRealtime();
+                newsPages.add(future.get(Math.max(remaining, 0) + READ_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                Log.e(LOG_TAG, "Query ran past its deadline, fetchNewsPages", e);
+                future.cancel(true);
+                newsPages.add(new NewsPage(new ArrayList<NewsItem>(), page, page,
+                        LoadError.TIMEOUT));
+            } catch (InterruptedException e) {
+                // Leave the interrupt for the caller to see, and for the rest of the queries
+                // to be cancelled by
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                newsPages.add(new NewsPage(new ArrayList<NewsItem>(), page, page,
+                        LoadError.NO_CONNECTION));
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Problem running query, fetchNewsPages", e);
+                future.cancel(true);
+                newsPages.add(new NewsPage(new ArrayList<NewsItem>(), page, page,
+                        LoadError.NO_CONNECTION));
+            }
+        }
+
+        return newsPages;
+    }
+
+    /**
+     * Returns the error which happened first, given the one so far and a new one.
+     */
+    private static LoadError firstError(LoadError error, LoadError newError) {
+        return error == LoadError.NONE ? newError : error;
+    }
+
+    /**
+     * Merges several pages of news items into one, ordered newest first, leaving out any news
+     * item with the same web URL as one that has already been included. The merged page has
+     * the error of the first page that failed, if any did.
+     */
+    private static NewsPage mergeNewsPages(List<NewsPage> newsPages, int page) {
+        Map<String, NewsItem> byUrl = new HashMap<>();
+        LoadError error = LoadError.NONE;
+        int pages = page;
+        for (NewsPage newsPage : newsPages) {
+            error = firstError(error, newsPage.getError());
+            for (NewsItem newsItem : newsPage.getNewsItems()) {
+                if (!byUrl.containsKey(newsItem.getUrl())) {
+                    byUrl.put(newsItem.getUrl(), newsItem);
+                }
+            }
+            pages = Math.max(pages, newsPage.getPages());
+        }
+
+        List<NewsItem> merged = new ArrayList<>(byUrl.values());
+        Collections.sort(merged, NEWEST_FIRST);
+        return new NewsPage(merged, page, pages, error);
+    }
+
+    /**
+     * Makes a request for a single page of news items, parsing the response as it streams in
+     * from the server rather than reading the whole response into memory first. If the same
+     * page is already being fetched by another thread, and there's no listener, this waits for
+     * that request and returns its result rather than making the request again. It only waits
+     * until its own deadline, even if the other request has longer.
+     *
+     * A request that fails because of the network or the server is retried with backoff until
+     * the deadline. If the Guardian API has been failing so much that requests have been
+     * stopped, the page is served from the HTTP response cache instead, if it's there.
+     * @param query the query to fetch the results of
+     * @param page the number of the page to fetch, starting from 1
+     * @param pageSize the number of results on each page
+     * @param since only fetch news items published on or after the day of this date, which is
+     *              in the format "2015-08-05T19:24:32Z". May be null to fetch all news items.
+     * @param deadlineMillis when the request must be finished by, in ms since boot as given by
+     *                       {@link SystemClock#elapsedRealtime()}
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed, while the
+     *                 rest of the response is still being downloaded. May be null. If a request
+     *                 fails part way through and is retried, it may be told about a news item
+     *                 more than once.
+     * @return the page of {@link NewsItem}s in the response. Its list will be empty, and its
+     * error will say why, if the request failed or the response couldn't be parsed.
+     */
+    public static NewsPage fetchNewsPage(GuardianQuery query, final int page, int pageSize,
+                                         String since, final long deadlineMillis,
+                                         final NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        final String requestUrl = query.toUrl(page, pageSize, since);
+
+        // A caller with a listener wants to hear about each news item as it's parsed, so it
+        // can't share a request that someone else is already part way through
+        if (listener != null) {
+            return executeWithFallback(requestUrl, page, deadlineMillis, listener);
+        }
 
-        String jsonResponse = "";
         try {
-            jsonResponse = makeHttpRequest(url);
-            System.out.println(jsonResponse);
+            // A request made by someone else has their deadline, which may be much later, so
+            // only wait for it until ours
+            long remaining = deadlineMillis - SystemClock.elapsedRealtime();
+            return PAGE_REQUESTS.execute(requestUrl, new Callable<NewsPage>() {
+                @Override
+                public NewsPage call() {
+                    return executeWithFallback(requestUrl, page, deadlineMillis, null);
+                }
+            }, Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.e(LOG_TAG, "Shared request ran past the deadline, fetchNewsPage", e);
+            return new NewsPage(new ArrayList<NewsItem>(), page, page, LoadError.TIMEOUT);
+        } catch (InterruptedException e) {
+            // Leave the interrupt for the caller to see, and treat the request as failed
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem sharing request, fetchNewsPage", e);
+        }
+        return new NewsPage(new ArrayList<NewsItem>(), page, page, LoadError.NO_CONNECTION);
+    }
+
+    /**
+     * Makes the request for a page of results through {@link #GUARDIAN_API}, so that it's retried
+     * if it fails. If requests to the API have been stopped, the cached response is used instead.
+     */
+    private static NewsPage executeWithFallback(
+            final String requestUrl, final int page, long deadlineMillis,
+            final NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        NewsPage newsPage = GUARDIAN_API.execute(new ApiRequestExecutor.Attempt() {
+            @Override
+            public NewsPage attempt(int timeoutMillis) {
+                return fetchNewsPage(requestUrl, page, timeoutMillis, false, listener);
+            }
+        }, deadlineMillis, CONNECT_TIMEOUT_MILLIS, page);
+
+        if (newsPage.getError() == LoadError.SERVICE_UNAVAILABLE) {
+            // Fall back to what was fetched last time, but keep the error so the caller knows
+            // the page may be out of date
+            NewsPage cachedPage = fetchNewsPage(requestUrl, page, READ_TIMEOUT_MILLIS, true,
+                    listener);
+            if (cachedPage.isSuccessful()) {
+                return new NewsPage(cachedPage.getNewsItems(), cachedPage.getCurrentPage(),
+                        cachedPage.getPages(), LoadError.SERVICE_UNAVAILABLE);
+            }
+        }
+        return newsPage;
+    }
+
+    /**
+     * Makes a single request for a page of results and parses the response.
+     * @param requestUrl the URL of the page of results
+     * @param page the number of the page being fetched, starting from 1
+     * @param timeoutMillis the longest the request may take to connect, or wait for more data
+     *                      once connected, in ms
+     * @param onlyIfCached true to only use the HTTP response cache, without touching the network
+     * @param listener told about each {@link NewsItem} as soon as it has been parsed. May be null.
+     * @return the page of {@link NewsItem}s in the response, which is empty if the request failed
+     */
+    private static NewsPage fetchNewsPage(String requestUrl, int page, int timeoutMillis,
+                                          boolean onlyIfCached,
+                                          NewsItemJsonParser.OnNewsItemParsedListener listener) {
+        // Until we know otherwise, treat the requested page as the last one, and as having failed
+        NewsPage newsPage = new NewsPage(new ArrayList<NewsItem>(), page, page,
+                LoadError.REQUEST_REJECTED);
+        // If the URL isn't valid, there's no point making the request. Finish early.
+        if (createURL(requestUrl) == null) {
+            return newsPage;
+        }
+
+        // Use the response cache, and if asked to, only the response cache, in which case a
+        // response as stale as MAX_STALE_SECONDS will do and the response code is 504 if there
+        // isn't one
+        HttpTransport.Request request = new HttpTransport.Request(requestUrl,
+                Math.min(CONNECT_TIMEOUT_MILLIS, timeoutMillis),
+                Math.min(READ_TIMEOUT_MILLIS, timeoutMillis),
+                true, onlyIfCached ? "only-if-cached, max-stale=" + MAX_STALE_SECONDS : null);
+
+        // The response from the server, which holds the connection until it's closed
+        HttpTransport.Response response = null;
+        // True once the response has been read without a problem, so its connection can be reused
+        boolean readSuccessfully = false;
+
+        try {
+            long requestStart = SystemClock.elapsedRealtime();
+            response = httpTransport.execute(request);
+
+            // if the response code is correct, parse the NewsItems straight off the stream,
+            // otherwise finish early so that the page of NewsItems will still be empty
+            int responseCode = response.getCode();
+            long parseStart = SystemClock.elapsedRealtime();
+            Metrics.record(Metrics.NETWORK_LATENCY_MS, parseStart - requestStart);
+
+            if (responseCode == 200) {
+                CountingInputStream countingStream = new CountingInputStream(response.getBody());
+                newsPage = NewsItemJsonParser.parse(countingStream, listener);
+
+                Metrics.record(Metrics.PARSE_TIME_MS, SystemClock.elapsedRealtime() - parseStart);
+                Metrics.record(Metrics.RESPONSE_BYTES, countingStream.getCount());
+                Metrics.add(Metrics.ITEMS_PARSED, newsPage.getNewsItems().size());
+            } else {
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
+                newsPage = new NewsPage(newsPage.getNewsItems(), page, page,
+                        getErrorForResponseCode(responseCode));
+            }
+            readSuccessfully = true;
+
+        } catch (MalformedJsonException e) {
+            Log.e(LOG_TAG, "Problem parsing JSON, fetchNewsPage", e);
+            newsPage = new NewsPage(new ArrayList<NewsItem>(), page, page, LoadError.BAD_RESPONSE);
+        } catch (SocketTimeoutException e) {
+            Log.e(LOG_TAG, "HTTP request timed out, fetchNewsPage", e);
+            newsPage = new NewsPage(new ArrayList<NewsItem>(), page, page, LoadError.TIMEOUT);
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making HTTP request, fetchNewsItems");
+            Log.e(LOG_TAG, "Problem making HTTP request, fetchNewsPage", e);
+            newsPage = new NewsPage(new ArrayList<NewsItem>(), page, page,
+                    LoadError.NO_CONNECTION);
+        } finally {
+            // release resources, leaving the connection open so it can be reused, unless the
+            // response stopped part way through, in which case reading the rest of it could
+            // take until the read timeout again
+            closeResponse(response, readSuccessfully);
         }
 
-        // Extract relevant fields from the JSON response and return a list of NewsItems
-        return extractResultFromJson(jsonResponse);
+        if (!newsPage.isSuccessful()) {
+            Metrics.increment(Metrics.REQUEST_FAILURES);
+        }
+        return newsPage;
     }
 
     /**
-     * Returns a list of {@link NewsItem}s after parsing the given String.
+     * Returns a list of {@link NewsItem}s after parsing the given String. This builds the whole
+     * response as JSONObjects, so {@link #fetchNewsPage} uses {@link NewsItemJsonParser} on the
+     * response stream instead; this is for when the response is already held as a String.
      * @param jsonResponse is the string which must be parsed
      * @return a {@link List} of NewsItems if the given string could be correctly parsed.
      * Otherwise, return an empty list.
      */
-    private static List<NewsItem> extractResultFromJson(String jsonResponse) {
+    static List<NewsItem> extractResultFromJson(String jsonResponse) {
         // Create an empty list of NewsItems
         List<NewsItem> newsItems = new ArrayList<>();
 
@@ -98,14 +475,16 @@ public class QueryUtils {
                 String webTitle = result.optString("webTitle");
                 String webUrl = result.optString("webUrl");
 
-                // Get the thumbnail (returns null if no thumbnail for this image)
-                Bitmap thumbnail = getThumbnail(result);
+                // Get the thumbnail URL (returns null if no thumbnail for this image). The image
+                // itself is downloaded later by a ThumbnailFetcher, so that the list can be
+                // returned as soon as the JSON has been parsed
+                String thumbnailUrl = getThumbnailUrl(result);
 
                 // Get the name of the contributor
                 String contributor = getContributor(result);
 
                 // Create a new NewsItem from the info parsed, and add it to the list of NewsItems
-                newsItems.add(new NewsItem(webUrl, webTitle, thumbnail, sectionName,
+                newsItems.add(new NewsItem(webUrl, webTitle, thumbnailUrl, sectionName,
                         webPublicationDate, contributor));
             }
 
@@ -117,52 +496,15 @@ public class QueryUtils {
     }
 
     /**
-     * Make a HTTP request to the given {@link URL}, and return a string response from the server.
-     * @param url the URL at which the network request should be made to retrieve the data
-     * @return the data returned from the server at the given URL, otherwise return an empty string
+     * Works out what went wrong from the response code of a failed request. Too many requests
+     * and server errors are worth retrying, while anything else means the request itself was
+     * refused.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        // the string to be returned from the server after the HTTP request is made
-        String jsonResponse = "";
-        // The HTTP client which will act as a communications link between the application and a URL
-        HttpURLConnection connection = null;
-        // The stream that we will receive the data over if successful
-        InputStream inputStream = null;
-
-        try {
-            // attempt to open a connection to the server and make a GET request
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setReadTimeout(10000);
-            connection.setConnectTimeout(15000);
-            connection.connect();
-
-            // if the response code is correct, proceed to read the JSON response from stream,
-            // otherwise finish early so that the jsonResponse variable will still be an
-            // empty string
-            int responseCode = connection.getResponseCode();
-            if (responseCode == 200) {
-                inputStream = connection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + responseCode);
-            }
-
-        } catch (IOException e) {
-            Log.e(LOG_TAG,
-                    "Error retrieving JSON response. Check internet connection?, makeHttpRequest");
-        } finally {
-            // close resources
-            if (connection != null) {
-                connection.disconnect();
-            }
-
-            if (inputStream != null) {
-                inputStream.close();
-            }
+    private static LoadError getErrorForResponseCode(int responseCode) {
+        if (responseCode == 429 || responseCode >= 500) {
+            return LoadError.SERVER_ERROR;
         }
-
-        return jsonResponse;
+        return LoadError.REQUEST_REJECTED;
     }
 
     /**
@@ -173,7 +515,7 @@ public class QueryUtils {
      * @return a String which holds the JSON response, which will be an empty string if a null
      * {@link InputStream} was provided.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
 
         // if there is an InputStream, create a BufferedReader to read from it into a StringBuilder
@@ -184,7 +526,9 @@ public class QueryUtils {
             // Read lines from the buffer, and update the StringBuilder
             String line = reader.readLine();
             while (line != null) {
-                Log.i(LOG_TAG, line);
+                if (BuildConfig.DEBUG) {
+                    Log.i(LOG_TAG, line);
+                }
                 output.append(line);
                 line = reader.readLine();
             }
@@ -216,46 +560,77 @@ public class QueryUtils {
     }
 
     /**
-     * Downloads an image from a given string, which represents the URL.
+     * Downloads an image from a given string, which represents the URL. The image is returned
+     * still encoded, so that it can be cached on disk before it is decoded. This always makes a
+     * request, so images should be downloaded through {@link ImageDownloader}, which shares
+     * requests for the same URL and limits how many are made to each host.
      * @param imageURL the string representing the location of the image to be downloaded
-     * @return a {@link Bitmap} of the image file found at the imageURL
+     * @param timeoutMillis the connect and read timeout for the request, in ms
+     * @return the raw bytes of the image file found at the imageURL, or null if the image
+     * couldn't be downloaded
      */
-    private static Bitmap getBitmapFromURL(String imageURL) {
+    static byte[] getBytesFromURL(String imageURL, int timeoutMillis) {
+        // Thumbnails already have their own disk cache in ImageCache, so don't store a
+        // second copy of them in the HTTP response cache
+        HttpTransport.Request request =
+                new HttpTransport.Request(imageURL, timeoutMillis, timeoutMillis, false, null);
+        HttpTransport.Response response = null;
+        boolean readSuccessfully = false;
+
         try {
-            URL url = new URL(imageURL);
-            HttpURLConnection connection = (HttpURLConnection) url
-                    .openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            InputStream input = connection.getInputStream();
-            Bitmap myBitmap = BitmapFactory.decodeStream(input);
-            return myBitmap;
+            response = httpTransport.execute(request);
+            if (response.getCode() != 200) {
+                Log.e(LOG_TAG, "Error response code for thumbnail: " + response.getCode());
+                readSuccessfully = true;
+                return null;
+            }
+            byte[] bytes = DiskCache.readFully(response.getBody());
+            readSuccessfully = true;
+            return bytes;
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem downloading image from thumbnail URL", e);
             return null;
+        } finally {
+            // release resources, leaving the connection open so it can be reused if the
+            // response was read successfully
+            closeResponse(response, readSuccessfully);
+        }
+    }
+
+    /**
+     * Finishes with a response, if there is one. One which was read successfully is closed, so
+     * its connection can be reused, and any other is aborted, so that nothing waits for the rest
+     * of a response which may have stalled.
+     */
+    private static void closeResponse(HttpTransport.Response response, boolean readSuccessfully) {
+        if (response == null) {
+            return;
+        }
+
+        if (readSuccessfully) {
+            response.close();
+        } else {
+            response.abort();
         }
     }
 
     /**
-     * Gets a {@link Bitmap} thumbnail image for a particular JSONObject retrieved from the server,
-     * if the JSONObject has a "fields" JSONObject with a string with the key "thumbnail".
+     * Gets the thumbnail URL for a particular JSONObject retrieved from the server, if the
+     * JSONObject has a "fields" JSONObject with a string with the key "thumbnail".
      * @param result a JSONObject retrieved from the server
-     * @return a Bitmap image that is the thumbnail for a {@link NewsItem}. If there is no thumbnail
+     * @return the URL of the thumbnail for a {@link NewsItem}. If there is no thumbnail
      * for the result, it returns null.
      */
-    private static Bitmap getThumbnail(JSONObject result) throws JSONException {
+    private static String getThumbnailUrl(JSONObject result) {
         // Get the JSONObject with the key "fields" for the particular result being parsed
         JSONObject fieldsObject = result.optJSONObject("fields");
 
-        // Attempt to get the image from the thumbnail URL provided by the JSON and then
-        // associate it with the NewsItem
-        Bitmap thumbnail = null;
+        String thumbnailUrl = null;
         if (fieldsObject != null) {
-            String thumbnailUrlString = fieldsObject.getString("thumbnail");
-            thumbnail = getBitmapFromURL(thumbnailUrlString);
+            thumbnailUrl = fieldsObject.optString("thumbnail", null);
         }
 
-        return thumbnail;
+        return thumbnailUrl;
     }
 
     /**
@@ -266,7 +641,7 @@ public class QueryUtils {
      * @return the name of the contributor for a {@link NewsItem}. If no contributor could be found,
      * it returns the default value of an empty string.
      */
-    private static String getContributor(JSONObject result) throws JSONException {
+    static String getContributor(JSONObject result) throws JSONException {
         String contributor = "";
 
         // Get the name of the contributor
@@ -285,4 +660,45 @@ public class QueryUtils {
         }
         return contributor;
     }
+
+    /**
+     * Counts the bytes read through it, so that the size of a response can be recorded without
+     * reading it into memory first.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.example.android.guardiannews;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link RequestCoalescer} makes sure that only one request for each key is in flight at a
+ * time. If a request is made for a key while another request for the same key is still running,
+ * the second caller waits for the first request to finish and gets its result, rather than
+ * making the same request again.
+ *
+ * Results aren't kept once a request has finished, so a later request for the same key is made
+ * again. This is only meant to stop concurrent callers repeating each other's work.
+ * @param <K> the type of the keys which identify requests, e.g. a URL
+ * @param <V> the type of the results of the requests
+ */
+public class RequestCoalescer<K, V> {
+
+    /** The requests which are still running, keyed by what they're requesting. */
+    private final Map<K, FutureTask<V>> inFlight = new HashMap<>();
+
+    /**
+     * Runs the given request on the calling thread, unless a request for the same key is already
+     * in flight, in which case this waits for that request to finish instead.
+     * @param key identifies what is being requested
+     * @param request makes the request. It's only called if no request for the key is in flight.
+     * @return the result of the request
+     * @throws ExecutionException if the request threw an exception
+     * @throws InterruptedException if the calling thread was interrupted while it was waiting
+     */
+    public V execute(K key, Callable<V> request) throws ExecutionException, InterruptedException {
+        return runOrJoin(key, request).get();
+    }
+
+    /**
+     * Runs the given request on the calling thread, unless a request for the same key is already
+     * in flight, in which case this waits for that request to finish, for up to the given time.
+     * The request in flight may have been made by a caller with much longer to wait than this
+     * one, so this lets each caller give up on a shared request when its own time is up.
+     * @param key identifies what is being requested
+     * @param request makes the request. It's only called if no request for the key is in flight.
+     * @param timeout the longest to wait for a request in flight
+     * @param unit the unit of the timeout
+     * @return the result of the request
+     * @throws ExecutionException if the request threw an exception
+     * @throws InterruptedException if the calling thread was interrupted while it was waiting
+     * @throws TimeoutException if the request in flight didn't finish in time. It carries on
+     * for the callers still waiting for it.
+     */
+    public V execute(K key, Callable<V> request, long timeout, TimeUnit unit)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        return runOrJoin(key, request).get(timeout, unit);
+    }
+
+    /**
+     * Runs the given request on the calling thread, unless a request for the same key is already
+     * in flight, and returns the task of whichever request the caller should wait for.
+     */
+    private FutureTask<V> runOrJoin(K key, Callable<V> request) {
+        FutureTask<V> task;
+        boolean owner = false;
+
+        synchronized (inFlight) {
+            task = inFlight.get(key);
+            if (task == null) {
+                task = new FutureTask<>(request);
+                inFlight.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            try {
+                task.run();
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(key);
+                }
+            }
+        }
+
+        return task;
+    }
+
+    /**
+     * Starts the given request on an executor, unless a request for the same key is already in
+     * flight, in which case that request's Future is returned instead. Because the request
+     * doesn't run on any caller's thread, a caller which is interrupted while it waits for the
+     * result can give up on it without failing the request for everyone else waiting for it.
+     * Callers mustn't cancel the returned Future, since it's shared.
+     * @param key identifies what is being requested
+     * @param request makes the request. It's only called if no request for the key is in flight.
+     * @param executor runs the request
+     * @return the Future of the request
+     */
+    public Future<V> submit(final K key, Callable<V> request, Executor executor) {
+        FutureTask<V> task;
+
+        synchronized (inFlight) {
+            task = inFlight.get(key);
+            if (task != null) {
+                return task;
+            }
+
+            task = new FutureTask<V>(request) {
+                @Override
+                protected void done() {
+                    synchronized (inFlight) {
+                        if (inFlight.get(key) == this) {
+                            inFlight.remove(key);
+                        }
+                    }
+                }
+            };
+            inFlight.put(key, task);
+        }
+
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Returns the number of requests which are still in flight. Finished requests are never kept,
+     * so this is 0 whenever nothing is being requested.
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.guardiannews;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the topics the user follows, and turns them into the {@link GuardianQuery}s
+ * that make up their news feed.
+ */
+public class SavedQueries {
+
+    private static final String PREFERENCES_NAME = "saved_queries";
+
+    private static final String KEY_TOPICS = "topics";
+
+    /** The topic followed until the user picks their own. */
+    private static final String DEFAULT_TOPIC = "john mayer";
+
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructs a new {@link SavedQueries}.
+     * @param context any {@link Context} of the app
+     */
+    public SavedQueries(Context context) {
+        preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the topics the user follows, in alphabetical order.
+     */
+    public List<String> getTopics() {
+        Set<String> topics = preferences.getStringSet(KEY_TOPICS,
+                Collections.singleton(DEFAULT_TOPIC));
+        List<String> sorted = new ArrayList<>(topics);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Replaces the topics the user follows. Nothing in the app lets the user pick them yet, so
+     * the feed follows {@link #DEFAULT_TOPIC} unless this is called from elsewhere, such as a
+     * test. Following several topics is only possible through this method for now.
+     */
+    public void setTopics(List<String> topics) {
+        preferences.edit()
+                .putStringSet(KEY_TOPICS, new HashSet<>(topics))
+                .apply();
+    }
+
+    /**
+     * Returns a query for each topic the user follows, ordered newest first.
+     */
+    public List<GuardianQuery> getQueries() {
+        List<GuardianQuery> queries = new ArrayList<>();
+        for (String topic : getTopics()) {
+            queries.add(new GuardianQuery.Builder()
+                    .terms(topic)
+                    .orderBy(GuardianQuery.ORDER_BY_NEWEST)
+                    .build());
+        }
+        return queries;
+    }
+}
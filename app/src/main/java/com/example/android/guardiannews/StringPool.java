@@ -0,0 +1,67 @@
+package com.example.android.guardiannews;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link StringPool} is a shared dictionary of the strings which are repeated across many
+ * {@link NewsItem}s, such as section names and contributors. Every news item with the same
+ * section name holds the same String object, rather than a copy of its own, so a large feed
+ * only pays for each distinct value once.
+ *
+ * Unlike {@link String#intern()}, the pool is bounded, so strings which are almost never
+ * repeated, like the names of one-off contributors, can't make it grow without limit. Once it's
+ * full, new values are simply not shared.
+ *
+ * News items are built on every thread that parses a query, several times each, so the pool
+ * is looked up without a lock.
+ */
+public class StringPool {
+
+    /**
+     * The most distinct strings the pool holds. Threads adding to it at the same time can take
+     * it a few past this, which doesn't matter.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    private static final ConcurrentMap<String, String> POOL = new ConcurrentHashMap<>();
+
+    /**
+     * Create a private constructor because no one should ever create a {@link StringPool}
+     * object. This class is only meant to hold static methods.
+     */
+    private StringPool() {
+    }
+
+    /**
+     * Returns the pooled String equal to the given one, adding it to the pool if it isn't there
+     * and the pool isn't full.
+     * @param value the string to share, may be null
+     * @return a String equal to the given one, which is the same object for every caller while
+     * it's in the pool
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String pooled = POOL.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (POOL.size() >= MAX_SIZE) {
+            return value;
+        }
+
+        // Another thread may add the same value at the same time, in which case theirs is used
+        pooled = POOL.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+
+    /**
+     * Returns the number of distinct strings in the pool.
+     */
+    public static int size() {
+        return POOL.size();
+    }
+}
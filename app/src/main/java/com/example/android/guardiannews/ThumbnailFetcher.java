@@ -0,0 +1,304 @@
+package com.example.android.guardiannews;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThumbnailFetcher} loads thumbnails on a bounded pool of background threads, so that
+ * several can be downloaded in parallel. Each thumbnail is handed back to the main thread as
+ * soon as it's ready, and a request can be cancelled if the thumbnail is no longer wanted, for
+ * example because the row it was for has been recycled to show another news item.
+ *
+ * The {@link ImageCache} is checked before going to the network: first its memory tier, on the
+ * main thread, and then its disk tier, on a download thread.
+ *
+ * Thumbnails which are about to be needed can be prefetched into the memory tier. Prefetches
+ * run one at a time on a thread of their own, so they never hold up the thumbnails of the rows
+ * which are actually on screen.
+ */
+public class ThumbnailFetcher {
+
+    private static final String LOG_TAG = ThumbnailFetcher.class.getName();
+
+    /** How long an idle download thread is kept alive before it is allowed to die. */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** The default number of thumbnails which are downloaded at the same time. */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /** The default connect and read timeout for each thumbnail request, in ms. */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * The pixel format thumbnails are decoded to. They're JPEGs with no transparency, so they
+     * don't need an alpha channel, and this uses half the memory of ARGB_8888.
+     */
+    public static final Bitmap.Config DEFAULT_BITMAP_CONFIG = Bitmap.Config.RGB_565;
+
+    /**
+     * Callback used to hand a loaded thumbnail to whoever asked for it.
+     */
+    public interface OnThumbnailLoadedListener {
+        void onThumbnailLoaded(String url, Bitmap thumbnail);
+    }
+
+    /** The pool of threads that thumbnails are downloaded on. */
+    private final ThreadPoolExecutor executor;
+
+    /** The thread that thumbnails are prefetched on. */
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    /** Used to post downloaded thumbnails back to the main thread. */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Where thumbnails are looked for before they're downloaded, and stored afterwards. */
+    private final ImageCache imageCache;
+
+    /** The connect and read timeout used for each individual thumbnail request, in ms. */
+    private final int timeoutMillis;
+
+    /** The size of the view the thumbnails are shown in, in pixels, which they're decoded to. */
+    private final int targetWidth;
+    private final int targetHeight;
+
+    /** The pixel format thumbnails are decoded to. */
+    private final Bitmap.Config bitmapConfig;
+
+    /** The downloads which have been submitted but not yet delivered. Main thread only. */
+    private final Set<Future<?>> pendingFetches = new HashSet<>();
+
+    /**
+     * Constructs a new {@link ThumbnailFetcher} with the default settings, which decodes
+     * thumbnails to the size of the ImageView in each row of the news feed.
+     * @param context the {@link Context} of the app
+     */
+    public ThumbnailFetcher(Context context) {
+        this(ImageCache.getInstance(context), DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT_MILLIS,
+                context.getResources().getDimensionPixelSize(
+                        R.dimen.newsfeed_list_item_image_width),
+                context.getResources().getDimensionPixelSize(
+                        R.dimen.newsfeed_list_item_image_height),
+                DEFAULT_BITMAP_CONFIG);
+    }
+
+    /**
+     * Constructs a new {@link ThumbnailFetcher}.
+     * @param imageCache the cache to look for thumbnails in before downloading them
+     * @param maxConcurrency the maximum number of thumbnails to download at the same time
+     * @param timeoutMillis the connect and read timeout for each thumbnail request, in ms
+     * @param targetWidth the width of the view the thumbnails are shown in, in pixels
+     * @param targetHeight the height of the view the thumbnails are shown in, in pixels
+     * @param bitmapConfig the pixel format to decode the thumbnails to
+     */
+    public ThumbnailFetcher(ImageCache imageCache, int maxConcurrency, int timeoutMillis,
+                            int targetWidth, int targetHeight, Bitmap.Config bitmapConfig) {
+        this.imageCache = imageCache;
+        this.timeoutMillis = timeoutMillis;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.bitmapConfig = bitmapConfig;
+        executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        prefetchExecutor = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the thumbnail at the given URL if it's already decoded in memory. This never
+     * blocks, so it can be used on the main thread to show cached thumbnails straight away.
+     * @param url the URL of the thumbnail
+     * @return the thumbnail, or null if it has to be fetched
+     */
+    public Bitmap getCachedThumbnail(String url) {
+        Bitmap thumbnail = imageCache.getBitmapFromMemory(url);
+        Metrics.increment(thumbnail != null
+                ? Metrics.THUMBNAIL_MEMORY_HITS : Metrics.THUMBNAIL_MEMORY_MISSES);
+        return thumbnail;
+    }
+
+    /**
+     * Starts loading the thumbnail at the given URL on a download thread. Must be called on the
+     * main thread.
+     * @param url the URL of the thumbnail
+     * @param listener told on the main thread when the thumbnail has been loaded. It isn't told
+     *                 anything if the thumbnail couldn't be loaded or the request was cancelled.
+     * @return a handle which can be passed to {@link #cancel(Future)}
+     */
+    public Future<?> fetchThumbnail(String url, OnThumbnailLoadedListener listener) {
+        return submitFetch(executor, url, listener);
+    }
+
+    /**
+     * Starts loading the thumbnail at the given URL into the memory cache, so it can be shown
+     * straight away when it's needed, unless it's there already. Prefetches are made one at a
+     * time, after the prefetches made before them. Must be called on the main thread.
+     * @param url the URL of the thumbnail
+     * @return a handle which can be passed to {@link #cancel(Future)}, or null if the thumbnail
+     * is already in the memory cache
+     */
+    public Future<?> prefetchThumbnail(String url) {
+        // Check the cache directly, so that prefetches don't count as hits or misses
+        if (imageCache.getBitmapFromMemory(url) != null) {
+            return null;
+        }
+        return submitFetch(prefetchExecutor, url, null);
+    }
+
+    /**
+     * Submits a task to load the thumbnail at the given URL, which puts it in the memory cache
+     * and tells the listener about it on the main thread, unless it's cancelled first.
+     * @param executor the pool to load the thumbnail on
+     * @param url the URL of the thumbnail
+     * @param listener told when the thumbnail has been loaded, may be null
+     * @return a handle which can be passed to {@link #cancel(Future)}
+     */
+    private Future<?> submitFetch(ExecutorService executor, final String url,
+                                  final OnThumbnailLoadedListener listener) {
+        // The task needs to know about its own Future so that it can tell whether it has been
+        // cancelled, and remove itself from the pending set once it's done
+        final Future<?>[] self = new Future<?>[1];
+        self[0] = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap thumbnail = loadThumbnail(url);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (thumbnail == null) {
+                            pendingFetches.remove(self[0]);
+                            return;
+                        }
+
+                        // The request may have been cancelled while the image was downloading,
+                        // in which case the result is no longer wanted. Nothing else has seen
+                        // the bitmap, so its memory can be reused by the next decode
+                        if (!pendingFetches.remove(self[0])) {
+                            imageCache.addReusableBitmap(thumbnail);
+                            return;
+                        }
+
+                        imageCache.putBitmapInMemory(url, thumbnail);
+                        if (listener != null) {
+                            listener.onThumbnailLoaded(url, thumbnail);
+                        }
+                    }
+                });
+            }
+        });
+        pendingFetches.add(self[0]);
+        return self[0];
+    }
+
+    /**
+     * Cancels a request made with {@link #fetchThumbnail} or {@link #prefetchThumbnail}, so its
+     * listener won't be told about it. Must be called on the main thread.
+     * @param fetch the handle returned when the request was made
+     */
+    public void cancel(Future<?> fetch) {
+        if (pendingFetches.remove(fetch)) {
+            fetch.cancel(true);
+        }
+    }
+
+    /**
+     * Cancels every download which hasn't been delivered yet. Must be called on the main thread.
+     */
+    public void cancelAll() {
+        for (Future<?> fetch : pendingFetches) {
+            fetch.cancel(true);
+        }
+        pendingFetches.clear();
+    }
+
+    /**
+     * Cancels every pending download and stops the download threads. The fetcher can't be used
+     * after this has been called.
+     */
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets the thumbnail at the given URL from the disk cache, or failing that from the network,
+     * and stores the downloaded bytes in the disk cache. The decoded bitmap is only put in the
+     * memory cache once it's delivered on the main thread. Called on a download thread.
+     * @param url the URL of the thumbnail
+     * @return the decoded thumbnail, or null if it couldn't be loaded
+     */
+    private Bitmap loadThumbnail(String url) {
+        boolean fromDisk = true;
+        byte[] bytes = imageCache.getBytesFromDisk(url);
+        if (bytes == null) {
+            Metrics.increment(Metrics.THUMBNAIL_DISK_MISSES);
+            fromDisk = false;
+
+            long downloadStart = SystemClock.elapsedRealtime();
+            bytes = ImageDownloader.download(url, timeoutMillis);
+            if (bytes != null) {
+                Metrics.record(Metrics.THUMBNAIL_DOWNLOAD_MS,
+                        SystemClock.elapsedRealtime() - downloadStart);
+                Metrics.record(Metrics.THUMBNAIL_BYTES, bytes.length);
+            }
+        } else {
+            Metrics.increment(Metrics.THUMBNAIL_DISK_HITS);
+        }
+
+        if (bytes == null) {
+            return null;
+        }
+
+        long decodeStart = SystemClock.elapsedRealtime();
+        Bitmap thumbnail = BitmapDecoder.decodeSampledBitmap(bytes, targetWidth, targetHeight,
+                bitmapConfig, imageCache);
+        Metrics.record(Metrics.THUMBNAIL_DECODE_MS, SystemClock.elapsedRealtime() - decodeStart);
+        if (thumbnail == null) {
+            // Not a valid image, so don't keep it around
+            return null;
+        }
+
+        if (!fromDisk) {
+            imageCache.putBytesOnDisk(url, bytes);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Creates named download threads that run at background priority, so that they don't
+     * compete with the UI thread while the user is scrolling.
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, LOG_TAG + " #" + count.getAndIncrement());
+        }
+    }
+}
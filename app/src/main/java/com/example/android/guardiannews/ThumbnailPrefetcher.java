@@ -0,0 +1,177 @@
+package com.example.android.guardiannews;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.widget.AbsListView;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link ThumbnailPrefetcher} loads the thumbnails of the rows just below the bottom of the
+ * news feed into the memory cache as the user scrolls, so they can be shown as soon as their
+ * rows scroll into view. It's driven by the news feed's scroll listener.
+ *
+ * During a fling the rows go past too quickly for their thumbnails to be worth loading, so
+ * every prefetch is cancelled until the list slows down again. Fewer rows are prefetched on a
+ * metered connection, where the user pays for each download. Whether the connection is metered
+ * is only looked up when it changes, rather than every time the rows do.
+ *
+ * {@link #release()} must be called when the news feed is destroyed.
+ */
+public class ThumbnailPrefetcher {
+
+    /** How many rows below the visible ones are prefetched on an unmetered connection. */
+    public static final int UNMETERED_PREFETCH_ROWS = 8;
+
+    /** How many rows below the visible ones are prefetched on a metered connection. */
+    public static final int METERED_PREFETCH_ROWS = 3;
+
+    private final Context context;
+
+    private final ThumbnailFetcher thumbnailFetcher;
+
+    private final ConnectivityManager connectivityManager;
+
+    /**
+     * The prefetches made for the rows below the visible ones, by thumbnail URL. A prefetch
+     * which has finished is removed, so that its thumbnail is prefetched again if it has been
+     * evicted from the memory cache by the time it's wanted again.
+     */
+    private final Map<String, Future<?>> prefetches = new HashMap<>();
+
+    /** True if the active network is metered. Kept up to date by {@link #connectivityReceiver}. */
+    private boolean metered;
+
+    /** Looks up whether the network is metered whenever the connectivity changes. */
+    private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            metered = ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+            // Prefetch for the new number of rows the next time the list scrolls
+            prefetchedFrom = -1;
+        }
+    };
+
+    /** True while the list is flinging. */
+    private boolean flinging;
+
+    /** The position and count of the rows last prefetched for, so they aren't repeated. */
+    private int prefetchedFrom = -1;
+    private int prefetchedTotal = -1;
+
+    /**
+     * Constructs a new {@link ThumbnailPrefetcher}.
+     * @param context the {@link Context} of the activity
+     * @param thumbnailFetcher the fetcher the rows' thumbnails are loaded with
+     */
+    public ThumbnailPrefetcher(Context context, ThumbnailFetcher thumbnailFetcher) {
+        this.context = context;
+        this.thumbnailFetcher = thumbnailFetcher;
+        connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        metered = ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+        context.registerReceiver(connectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Should be called from {@link AbsListView.OnScrollListener#onScrollStateChanged}.
+     */
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        flinging = scrollState == AbsListView.OnScrollListener.SCROLL_STATE_FLING;
+        if (flinging) {
+            cancelAll();
+        } else {
+            prefetch(view, view.getLastVisiblePosition() + 1, view.getCount());
+        }
+    }
+
+    /**
+     * Should be called from {@link AbsListView.OnScrollListener#onScroll}.
+     */
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                         int totalItemCount) {
+        if (!flinging) {
+            prefetch(view, firstVisibleItem + visibleItemCount, totalItemCount);
+        }
+    }
+
+    /**
+     * Cancels every prefetch which hasn't finished yet.
+     */
+    public void cancelAll() {
+        for (Future<?> prefetch : prefetches.values()) {
+            thumbnailFetcher.cancel(prefetch);
+        }
+        prefetches.clear();
+        prefetchedFrom = -1;
+        prefetchedTotal = -1;
+    }
+
+    /**
+     * Cancels every prefetch, and stops listening for connectivity changes. Must be called when
+     * the news feed is destroyed.
+     */
+    public void release() {
+        cancelAll();
+        context.unregisterReceiver(connectivityReceiver);
+    }
+
+    /**
+     * Prefetches the thumbnails of the rows starting at the given position, and cancels the
+     * prefetches for any rows which have scrolled into view or too far above.
+     * @param view the news feed
+     * @param from the position of the first row below the visible ones
+     * @param totalItemCount the number of rows in the news feed
+     */
+    private void prefetch(AbsListView view, int from, int totalItemCount) {
+        // onScroll is called for every frame of a scroll, but the rows only change now and then
+        if (from == prefetchedFrom && totalItemCount == prefetchedTotal) {
+            return;
+        }
+        prefetchedFrom = from;
+        prefetchedTotal = totalItemCount;
+
+        int rows = metered ? METERED_PREFETCH_ROWS : UNMETERED_PREFETCH_ROWS;
+        int to = Math.min(from + rows, totalItemCount);
+
+        Set<String> wanted = new HashSet<>();
+        for (int position = from; position < to; position++) {
+            Object item = view.getItemAtPosition(position);
+            if (item instanceof NewsItem && ((NewsItem) item).getThumbnailUrl() != null) {
+                wanted.add(((NewsItem) item).getThumbnailUrl());
+            }
+        }
+
+        // A row which is now visible has asked for its own thumbnail, and a row which is far
+        // above doesn't need one. A prefetch which has finished is forgotten either way.
+        Iterator<Map.Entry<String, Future<?>>> iterator = prefetches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Future<?>> entry = iterator.next();
+            if (entry.getValue().isDone()) {
+                iterator.remove();
+            } else if (!wanted.contains(entry.getKey())) {
+                thumbnailFetcher.cancel(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        for (String url : wanted) {
+            if (!prefetches.containsKey(url)) {
+                Future<?> prefetch = thumbnailFetcher.prefetchThumbnail(url);
+                if (prefetch != null) {
+                    prefetches.put(url, prefetch);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.guardiannews;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * An {@link HttpTransport} which makes requests with {@link HttpURLConnection}. Connections are
+ * left open once their response has been read, so that their sockets can be reused, unless the
+ * response is aborted.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private static final String LOG_TAG = UrlConnectionTransport.class.getName();
+
+    /**
+     * Opens a connection to the requested URL and makes a GET request.
+     *
+     * When the request allows it, the response cache installed by
+     * {@link GuardianNewsApplication} is used, so a request for a response which is cached but
+     * stale is made conditional on it having changed. The platform asks for a gzipped response
+     * and unzips it transparently, as long as no Accept-Encoding header is set here.
+     */
+    @Override
+    public Response execute(Request request) throws IOException {
+        // attempt to open a connection to the server and make a GET request
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(request.getUrl()).openConnection();
+        try {
+            connection.setRequestMethod("GET");
+            connection.setReadTimeout(request.getReadTimeoutMillis());
+            connection.setConnectTimeout(request.getConnectTimeoutMillis());
+            connection.setUseCaches(request.getUseCaches());
+            if (request.getCacheControl() != null) {
+                connection.addRequestProperty("Cache-Control", request.getCacheControl());
+            }
+            connection.connect();
+            return new UrlConnectionResponse(connection, connection.getResponseCode());
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * The response to a request made over an {@link HttpURLConnection}.
+     */
+    private static class UrlConnectionResponse implements Response {
+        private final HttpURLConnection connection;
+        private final int code;
+        private InputStream body;
+
+        UrlConnectionResponse(HttpURLConnection connection, int code) {
+            this.connection = connection;
+            this.code = code;
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = code >= 200 && code < 300
+                        ? connection.getInputStream() : connection.getErrorStream();
+            }
+            return body;
+        }
+
+        /**
+         * Finishes with the connection without disconnecting it, so that its socket goes back
+         * into the pool of keep-alive connections and can be reused by the next request to the
+         * same host. That only happens once the response has been read to the end, so whatever
+         * is left of it is read and thrown away first. That includes the body of an error
+         * response, which callers don't usually read. Only called once the response has been
+         * read successfully, so what's left is short and already on its way.
+         */
+        @Override
+        public void close() {
+            if (body == null && (code < 200 || code >= 300)) {
+                try {
+                    getBody();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem opening error stream, close", e);
+                }
+            }
+
+            if (body == null) {
+                // The response body was never opened, so the socket can't be reused
+                connection.disconnect();
+                return;
+            }
+
+            try {
+                byte[] buffer = new byte[4096];
+                while (body.read(buffer) != -1) {
+                    // Discard the rest of the response
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem draining response stream, close", e);
+            }
+
+            try {
+                body.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing response stream, close", e);
+            }
+        }
+
+        /**
+         * Disconnects without reading any more of the response, since the connection may have
+         * stalled. Its socket is closed rather than reused.
+         */
+        @Override
+        public void abort() {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a {@link CircuitBreaker} opens after enough failures in a row, lets a single trial
+ * request through once it has been open long enough, and closes again if that request works.
+ */
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private static final long OPEN_MILLIS = 1000;
+
+    /** A circuit breaker whose clock only moves when the test says so. */
+    private static class TestCircuitBreaker extends CircuitBreaker {
+        long now = 10000;
+
+        TestCircuitBreaker() {
+            super(FAILURE_THRESHOLD, OPEN_MILLIS);
+        }
+
+        @Override
+        long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    private final TestCircuitBreaker breaker = new TestCircuitBreaker();
+
+    @Test
+    public void opensAfterFailuresInARow() {
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertFalse(breaker.isOpen());
+
+        breaker.recordFailure();
+
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsTheFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void onlyOneTrialRequestOnceOpenTimeIsUp() {
+        open();
+
+        breaker.now += OPEN_MILLIS - 1;
+        assertFalse(breaker.allowRequest());
+
+        breaker.now += 1;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successfulTrialCloses() {
+        open();
+        breaker.now += OPEN_MILLIS;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordSuccess();
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialStaysOpenForAnotherWhile() {
+        open();
+        breaker.now += OPEN_MILLIS;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+
+        assertTrue(breaker.isOpen());
+        breaker.now += OPEN_MILLIS - 1;
+        assertFalse(breaker.allowRequest());
+        breaker.now += 1;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void neutralTrialStaysOpenAndLetsAnotherTrialThrough() {
+        open();
+        breaker.now += OPEN_MILLIS;
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordNeutral();
+
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void neutralResultKeepsTheFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordNeutral();
+        breaker.recordFailure();
+
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void resetCloses() {
+        open();
+
+        breaker.reset();
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+
+    private void open() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.isOpen());
+    }
+}
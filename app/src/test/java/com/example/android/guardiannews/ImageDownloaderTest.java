@@ -0,0 +1,96 @@
+package com.example.android.guardiannews;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that downloads of the same image are shared, and that a caller giving up on a shared
+ * download doesn't fail it for the others.
+ */
+public class ImageDownloaderTest {
+
+    private static final String URL = "https://media.example.com/thumbnail.jpg";
+
+    private static final byte[] IMAGE = {1, 2, 3};
+
+    @After
+    public void restoreFetcher() {
+        ImageDownloader.setFetcher(null);
+    }
+
+    @Test
+    public void ownerInterruptedWhileWaiterAttached() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fetches = new AtomicInteger();
+        ImageDownloader.setFetcher(new ImageDownloader.Fetcher() {
+            @Override
+            public byte[] fetch(String url, int timeoutMillis) {
+                fetches.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                return IMAGE;
+            }
+        });
+
+        // The first caller starts the download, like a prefetch for a row below the screen
+        final byte[][] results = new byte[2][];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[0] = ImageDownloader.download(URL, 1000);
+            }
+        });
+        owner.start();
+        started.await();
+
+        // The second caller joins it, like the row once it has scrolled into view
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[1] = ImageDownloader.download(URL, 1000);
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        // The prefetch is cancelled before the download finishes
+        owner.interrupt();
+        owner.join();
+        release.countDown();
+        waiter.join();
+
+        assertNull(results[0]);
+        assertArrayEquals(IMAGE, results[1]);
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void sequentialDownloadsAreNotShared() {
+        final AtomicInteger fetches = new AtomicInteger();
+        ImageDownloader.setFetcher(new ImageDownloader.Fetcher() {
+            @Override
+            public byte[] fetch(String url, int timeoutMillis) {
+                fetches.incrementAndGet();
+                return IMAGE;
+            }
+        });
+
+        assertArrayEquals(IMAGE, ImageDownloader.download(URL, 1000));
+        assertArrayEquals(IMAGE, ImageDownloader.download(URL, 1000));
+        assertEquals(2, fetches.get());
+    }
+}
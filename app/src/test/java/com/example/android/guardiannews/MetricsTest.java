@@ -0,0 +1,60 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the percentile estimates of {@link Metrics.Histogram}, which are the upper bound of the
+ * power of two bucket each percentile falls in, capped at the largest value recorded.
+ */
+public class MetricsTest {
+
+    @Test
+    public void emptyHistogram() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        // The 50th value is 50, in the bucket from 32 to 63
+        assertEquals(63, histogram.getPercentile(50));
+        // The 90th value is 90, in the bucket from 64 to 127, which is capped at 100
+        assertEquals(100, histogram.getPercentile(90));
+        // The first value is 1, which is a bucket of its own
+        assertEquals(1, histogram.getPercentile(1));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(5050, histogram.getSum());
+    }
+
+    @Test
+    public void zeroAndNegativeValues() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        histogram.record(0);
+        histogram.record(-5);
+        histogram.record(7);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(99));
+        assertEquals(7, histogram.getSum());
+    }
+
+    @Test
+    public void countersAddUp() {
+        String name = "test.counter";
+        long before = Metrics.getCount(name);
+
+        Metrics.increment(name);
+        Metrics.add(name, 4);
+
+        assertEquals(before + 5, Metrics.getCount(name));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.android.guardiannews;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a {@link NewsFeedCursor} merges the pages of several queries into one list,
+ * newest first, even when a later page of one query is newer than an earlier page of another.
+ */
+public class NewsFeedCursorTest {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final GuardianQuery queryA = new GuardianQuery.Builder().terms("a").build();
+    private final GuardianQuery queryB = new GuardianQuery.Builder().terms("b").build();
+
+    /** The pages of results of each query, oldest page last. */
+    private final Map<GuardianQuery, List<List<NewsItem>>> results = new HashMap<>();
+
+    /** The number of pages fetched from the queries. */
+    private int fetches;
+
+    /** What the next fetch fails with, if anything. */
+    private LoadError failNextFetch = LoadError.NONE;
+
+    private final NewsFeedCursor.PageFetcher fakeFetcher = new NewsFeedCursor.PageFetcher() {
+        @Override
+        public List<NewsPage> fetchNewsPages(List<GuardianQuery> queries, int[] pages,
+                                             int pageSize, long deadlineMillis,
+                                             NewsItemJsonParser.OnNewsItemParsedListener listener) {
+            List<NewsPage> newsPages = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i++) {
+                int page = pages[i];
+                if (failNextFetch != LoadError.NONE) {
+                    newsPages.add(new NewsPage(new ArrayList<NewsItem>(), page, page,
+                            failNextFetch));
+                    continue;
+                }
+                fetches++;
+                List<List<NewsItem>> queryResults = results.get(queries.get(i));
+                List<NewsItem> newsItems = page <= queryResults.size()
+                        ? queryResults.get(page - 1) : new ArrayList<NewsItem>();
+                if (listener != null) {
+                    for (NewsItem newsItem : newsItems) {
+                        listener.onNewsItemParsed(newsItem);
+                    }
+                }
+                newsPages.add(new NewsPage(newsItems, page, queryResults.size()));
+            }
+            failNextFetch = LoadError.NONE;
+            return newsPages;
+        }
+    };
+
+    @Before
+    public void setUpResults() {
+        // Query A's news items are all old, and query B's second page is newer than all of them
+        results.put(queryA, Arrays.asList(
+                Arrays.asList(newsItem("a1", 80), newsItem("a2", 70)),
+                Arrays.asList(newsItem("a3", 20), newsItem("a4", 10))));
+        results.put(queryB, Arrays.asList(
+                Arrays.asList(newsItem("b1", 100), newsItem("b2", 95)),
+                Arrays.asList(newsItem("b3", 90), newsItem("b4", 30))));
+    }
+
+    @Test
+    public void mergesAcrossPageNumbers() {
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA, queryB), PAGE_SIZE,
+                fakeFetcher);
+
+        List<String> urls = new ArrayList<>();
+        while (cursor.hasNext()) {
+            NewsPage newsPage = cursor.next(0, null);
+            assertTrue(newsPage.isSuccessful());
+            for (NewsItem newsItem : newsPage.getNewsItems()) {
+                urls.add(newsItem.getUrl());
+            }
+        }
+
+        assertEquals(Arrays.asList("b1", "b2", "b3", "a1", "a2", "b4", "a3", "a4"), urls);
+        assertEquals(4, fetches);
+    }
+
+    @Test
+    public void leavesOutNewsItemsFoundByMoreThanOneQuery() {
+        results.put(queryB, Arrays.asList(
+                Arrays.asList(newsItem("b1", 100), newsItem("a1", 80))));
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA, queryB), 10,
+                fakeFetcher);
+
+        NewsPage newsPage = cursor.next(0, null);
+
+        assertEquals(5, newsPage.getNewsItems().size());
+        assertFalse(newsPage.hasNextPage());
+    }
+
+    @Test
+    public void fillFetchesTheNextPageWithoutTakingIt() {
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA, queryB), PAGE_SIZE,
+                fakeFetcher);
+
+        assertEquals(LoadError.NONE, cursor.fill(0));
+        int fetched = fetches;
+        NewsPage newsPage = cursor.next(0, null);
+
+        assertEquals(fetched, fetches);
+        assertEquals("b1", newsPage.getNewsItems().get(0).getUrl());
+        assertEquals("b2", newsPage.getNewsItems().get(1).getUrl());
+    }
+
+    @Test
+    public void failedFetchIsTriedAgain() {
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA, queryB), PAGE_SIZE,
+                fakeFetcher);
+        failNextFetch = LoadError.NO_CONNECTION;
+
+        NewsPage failed = cursor.next(0, null);
+        NewsPage retried = cursor.next(0, null);
+
+        assertEquals(LoadError.NO_CONNECTION, failed.getError());
+        assertTrue(failed.getNewsItems().isEmpty());
+        assertTrue(retried.isSuccessful());
+        assertEquals("b1", retried.getNewsItems().get(0).getUrl());
+    }
+
+    @Test
+    public void discardFetchedRefetchesLaterPages() {
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA, queryB), 3,
+                fakeFetcher);
+        cursor.next(0, null);
+
+        cursor.discardFetched();
+        List<String> urls = new ArrayList<>();
+        while (cursor.hasNext()) {
+            for (NewsItem newsItem : cursor.next(0, null).getNewsItems()) {
+                urls.add(newsItem.getUrl());
+            }
+        }
+
+        assertEquals(Arrays.asList("a1", "a2", "b4", "a3", "a4"), urls);
+    }
+
+    @Test
+    public void singleQueryOnlyStreamsWhatItHandsOut() {
+        // The first page is short, so the second is fetched to fill the page, and only its
+        // first news item is handed out
+        results.put(queryA, Arrays.asList(
+                Arrays.asList(newsItem("a1", 80)),
+                Arrays.asList(newsItem("a2", 70), newsItem("a3", 60))));
+        NewsFeedCursor cursor = new NewsFeedCursor(Arrays.asList(queryA), PAGE_SIZE,
+                fakeFetcher);
+        final List<String> streamed = new ArrayList<>();
+
+        NewsPage newsPage = cursor.next(0, new NewsItemJsonParser.OnNewsItemParsedListener() {
+            @Override
+            public void onNewsItemParsed(NewsItem newsItem) {
+                streamed.add(newsItem.getUrl());
+            }
+        });
+
+        assertEquals(2, newsPage.getNewsItems().size());
+        assertEquals(Arrays.asList("a1", "a2"), streamed);
+    }
+
+    @Test
+    public void rejectsQueriesNotOrderedNewestFirst() {
+        GuardianQuery byRelevance = new GuardianQuery.Builder().terms("c")
+                .orderBy(GuardianQuery.ORDER_BY_RELEVANCE).build();
+
+        try {
+            new NewsFeedCursor(Arrays.asList(queryA, byRelevance), PAGE_SIZE, fakeFetcher);
+            fail("A query ordered by relevance was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static NewsItem newsItem(String url, long publishedMillis) {
+        return new NewsItem(url, url, null, "Music", publishedMillis, "Contributor");
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that {@link NewsItemCodec} gives back exactly the news items it was given.
+ */
+public class NewsItemCodecTest {
+
+    @Test
+    public void roundTripKeepsEveryField() throws Exception {
+        List<NewsItem> newsItems = Arrays.asList(
+                new NewsItem("https://www.theguardian.com/music/1", "Headline one",
+                        "https://media.guim.co.uk/1.jpg", "Music", "2016-10-24T15:07:09Z",
+                        "Michael Hann"),
+                new NewsItem("https://www.theguardian.com/music/2", "Headline two",
+                        null, "Music", "2016-10-23T09:00:00Z", ""));
+
+        List<NewsItem> decoded = NewsItemCodec.decode(NewsItemCodec.encode(newsItems));
+
+        assertEquals(newsItems, decoded);
+        assertEquals("2016-10-24T15:07:09Z", decoded.get(0).getTime());
+        assertNull(decoded.get(1).getThumbnailUrl());
+        assertNull(decoded.get(0).getRawTime());
+    }
+
+    @Test
+    public void roundTripKeepsRawTime() throws Exception {
+        // Parses, but formats back as "2016-10-24T05:07:09Z", so it has to be kept as it was
+        String time = "2016-10-24T5:07:09Z";
+        List<NewsItem> newsItems = Arrays.asList(new NewsItem(
+                "https://www.theguardian.com/music/3", "Headline three", null, "Music", time,
+                "Michael Hann"));
+
+        List<NewsItem> decoded = NewsItemCodec.decode(NewsItemCodec.encode(newsItems));
+
+        assertEquals(newsItems, decoded);
+        assertEquals(time, decoded.get(0).getTime());
+        assertEquals(time, decoded.get(0).getRawTime());
+        assertEquals(newsItems.get(0).getPublishedMillis(), decoded.get(0).getPublishedMillis());
+    }
+
+    @Test
+    public void roundTripOfEmptyList() throws Exception {
+        List<NewsItem> decoded =
+                NewsItemCodec.decode(NewsItemCodec.encode(new ArrayList<NewsItem>()));
+
+        assertEquals(0, decoded.size());
+    }
+
+    @Test
+    public void decodeRejectsOtherBytes() throws Exception {
+        try {
+            NewsItemCodec.decode("not news items".getBytes("UTF-8"));
+            fail("Decoded bytes which weren't encoded news items");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
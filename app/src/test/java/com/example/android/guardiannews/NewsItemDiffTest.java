@@ -0,0 +1,88 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link NewsItemDiff} matches news items up by their web URL, and keeps the news
+ * items being shown wherever they haven't changed.
+ */
+public class NewsItemDiffTest {
+
+    private final NewsItem first = newsItem("first", "First headline");
+    private final NewsItem second = newsItem("second", "Second headline");
+    private final NewsItem third = newsItem("third", "Third headline");
+
+    @Test
+    public void insert() {
+        NewsItem fresh = newsItem("fresh", "Fresh headline");
+
+        NewsItemDiff diff = NewsItemDiff.compute(Arrays.asList(first, second),
+                Arrays.asList(fresh, newsItem("first", "First headline"), second));
+
+        assertEquals(1, diff.getInsertedCount());
+        assertEquals(2, diff.getUnchangedCount());
+        assertTrue(diff.hasChanges());
+        assertSame(fresh, diff.getMergedNewsItems().get(0));
+        assertSame(first, diff.getMergedNewsItems().get(1));
+    }
+
+    @Test
+    public void update() {
+        NewsItem retitled = newsItem("second", "Second headline, updated");
+
+        NewsItemDiff diff = NewsItemDiff.compute(Arrays.asList(first, second),
+                Arrays.asList(first, retitled));
+
+        assertEquals(1, diff.getUpdatedCount());
+        assertEquals(1, diff.getUnchangedCount());
+        assertTrue(diff.hasChanges());
+        assertSame(retitled, diff.getMergedNewsItems().get(1));
+    }
+
+    @Test
+    public void remove() {
+        NewsItemDiff diff = NewsItemDiff.compute(Arrays.asList(first, second, third),
+                Arrays.asList(first, third));
+
+        assertEquals(1, diff.getRemovedCount());
+        assertEquals(2, diff.getUnchangedCount());
+        assertTrue(diff.hasChanges());
+        assertEquals(Arrays.asList(first, third), diff.getMergedNewsItems());
+    }
+
+    @Test
+    public void reorder() {
+        NewsItemDiff diff = NewsItemDiff.compute(Arrays.asList(first, second),
+                Arrays.asList(newsItem("second", "Second headline"),
+                        newsItem("first", "First headline")));
+
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getUpdatedCount());
+        assertEquals(0, diff.getRemovedCount());
+        assertTrue(diff.hasChanges());
+        assertSame(second, diff.getMergedNewsItems().get(0));
+        assertSame(first, diff.getMergedNewsItems().get(1));
+    }
+
+    @Test
+    public void noChanges() {
+        List<NewsItem> merged = NewsItemDiff.compute(Arrays.asList(first, second),
+                Arrays.asList(newsItem("first", "First headline"),
+                        newsItem("second", "Second headline"))).getMergedNewsItems();
+
+        assertFalse(NewsItemDiff.compute(Arrays.asList(first, second), merged).hasChanges());
+        assertFalse(NewsItemDiff.compute(null, null).hasChanges());
+    }
+
+    private static NewsItem newsItem(String url, String webTitle) {
+        return new NewsItem(url, webTitle, null, "Music", 1477321629000L, "Michael Hann");
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that what the user types is turned into a safe full-text prefix query.
+ */
+public class NewsStoreTest {
+
+    @Test
+    public void everyWordIsAPrefix() {
+        assertEquals("joh* may*", NewsStore.toPrefixQuery("Joh May"));
+    }
+
+    @Test
+    public void ftsSyntaxIsTreatedAsSpaces() {
+        assertEquals("john* mayer*", NewsStore.toPrefixQuery("\"john\" -mayer*"));
+        assertEquals("a* b* c*", NewsStore.toPrefixQuery("a:b^(c)"));
+        assertEquals("brexit*", NewsStore.toPrefixQuery("  -brexit*  "));
+    }
+
+    @Test
+    public void lettersAndDigitsInAnyScriptAreKept() {
+        assertEquals("café* 2016*", NewsStore.toPrefixQuery("Café 2016"));
+    }
+
+    @Test
+    public void noWordsGivesAnEmptyQuery() {
+        assertEquals("", NewsStore.toPrefixQuery(""));
+        assertEquals("", NewsStore.toPrefixQuery(" *\"()- "));
+    }
+}
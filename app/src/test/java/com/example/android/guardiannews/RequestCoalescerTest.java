@@ -0,0 +1,185 @@
+package com.example.android.guardiannews;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that {@link RequestCoalescer} shares a request between callers which make it at the same
+ * time, and only then.
+ */
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+    @Test
+    public void concurrentRequestsAreShared() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+
+        final String[] results = new String[2];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[0] = executeQuietly("key", request);
+            }
+        });
+        owner.start();
+        started.await();
+
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                results[1] = executeQuietly("key", request);
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        release.countDown();
+        owner.join();
+        waiter.join();
+
+        assertEquals(1, calls.get());
+        assertEquals("result", results[0]);
+        assertSame(results[0], results[1]);
+    }
+
+    @Test
+    public void sequentialRequestsAreNotShared() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() {
+                return "call " + calls.incrementAndGet();
+            }
+        };
+
+        assertEquals("call 1", coalescer.execute("key", request));
+        assertEquals("call 2", coalescer.execute("key", request));
+    }
+
+    @Test
+    public void failureIsPassedOnAndNotKept() throws Exception {
+        try {
+            coalescer.execute("key", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IllegalStateException("failed");
+                }
+            });
+            fail("The request's exception wasn't passed on");
+        } catch (ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+
+        assertEquals("retried", coalescer.execute("key", new Callable<String>() {
+            @Override
+            public String call() {
+                return "retried";
+            }
+        }));
+    }
+
+    @Test
+    public void waiterGivesUpAtItsOwnTimeout() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "result";
+            }
+        };
+
+        final String[] result = new String[1];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = executeQuietly("key", request);
+            }
+        });
+        owner.start();
+        started.await();
+
+        try {
+            coalescer.execute("key", request, 10, TimeUnit.MILLISECONDS);
+            fail("The waiter didn't give up on the shared request");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+
+        // The request carries on for its owner
+        release.countDown();
+        owner.join();
+        assertEquals("result", result[0]);
+    }
+
+    @Test
+    public void requestsAreOnlyInFlightUntilTheyFinish() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<String> request = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return "result";
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = coalescer.submit("first", request, executor);
+            Future<String> shared = coalescer.submit("first", request, executor);
+            Future<String> second = coalescer.submit("second", request, executor);
+
+            assertSame(first, shared);
+            assertEquals(2, coalescer.getInFlightCount());
+
+            release.countDown();
+            assertEquals("result", first.get());
+            assertEquals("result", second.get());
+        } finally {
+            executor.shutdown();
+        }
+
+        // Each request leaves the map as it finishes, just after its result is set
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+        assertEquals(0, coalescer.getInFlightCount());
+
+        coalescer.execute("first", request);
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    private String executeQuietly(String key, Callable<String> request) {
+        try {
+            return coalescer.execute(key, request);
+        } catch (ExecutionException | InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}